@@ -21,7 +21,10 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.concurrent.CompletableFuture;
 
@@ -88,7 +91,7 @@ public class VideoController {
     }
 
     @GetMapping("/stream/{id}")
-    public ResponseEntity<byte[]> streamVideo(
+    public ResponseEntity<StreamingResponseBody> streamVideo(
             @PathVariable("id") Long videoId,
             @RequestParam(value = "resolution", required = false) String resolution,
             @RequestHeader(value = "Range", required = false) String rangeHeader,
@@ -109,6 +112,16 @@ public class VideoController {
         return videoService.streamVideo(videoId, resolution, rangeHeader);
     }
 
+    @GetMapping("/{id}/cmaf/{*path}")
+    public ResponseEntity<StreamingResponseBody> getPackagedObject(
+            @PathVariable("id") Long videoId,
+            @PathVariable("path") String path) {
+
+        log.debug("Serving packaged object {} for video ID: {}", path, videoId);
+
+        return videoService.streamPackagedObject(videoId, path);
+    }
+
     @GetMapping("/{id}/thumbnail")
     public ResponseEntity<Resource> getThumbnail(@PathVariable("id") Long videoId) {
         try {
@@ -164,16 +177,73 @@ public class VideoController {
         return ResponseEntity.ok(WebResponseDTO.success(response, "Chunk uploaded successfully"));
     }
 
+    /**
+     * Accepts a chunk as a raw request body. Unlike the multipart form endpoint, the body is
+     * never spooled to disk or buffered by the servlet container; it is streamed straight to
+     * its destination. An optional X-Chunk-SHA256 header is verified against the received bytes.
+     */
+    @PostMapping(value = "/upload/chunk", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<WebResponseDTO<ChunkUploadDTO>> uploadRawChunk(
+            @RequestParam("videoId") Long videoId,
+            @RequestParam("chunkNumber") int chunkNumber,
+            @RequestParam("totalChunks") int totalChunks,
+            @RequestHeader(value = "X-Chunk-SHA256", required = false) String checksum,
+            HttpServletRequest request,
+            Authentication authentication) throws IOException {
+
+        log.info("Uploading raw chunk {} of {} for video ID: {}", chunkNumber, totalChunks, videoId);
+
+        long size = request.getContentLengthLong();
+        if (size < 0) {
+            throw new ResponseStatusException(HttpStatus.LENGTH_REQUIRED, "Content-Length is required");
+        }
+
+        String username = authentication.getName();
+        ChunkUploadDTO response;
+        try (InputStream body = request.getInputStream()) {
+            response = videoUploadService.uploadChunk(username, videoId, chunkNumber, totalChunks, body, size, checksum);
+        }
+
+        return ResponseEntity.ok(WebResponseDTO.success(response, "Chunk uploaded successfully"));
+    }
+
+    @GetMapping("/upload/status")
+    public ResponseEntity<WebResponseDTO<UploadStatusDTO>> getUploadStatus(
+            @RequestParam("videoId") Long videoId,
+            Authentication authentication) {
+
+        log.info("Getting upload status for video ID: {}", videoId);
+
+        String username = authentication.getName();
+        UploadStatusDTO status = videoUploadService.getUploadStatus(username, videoId);
+
+        return ResponseEntity.ok(WebResponseDTO.success(status, "Upload status retrieved successfully"));
+    }
+
     @PostMapping("/upload/complete")
-    public ResponseEntity<WebResponseDTO<VideoDTO>> completeUpload(
+    public ResponseEntity<WebResponseDTO<UploadFinalizationDTO>> completeUpload(
             @RequestParam("videoId") Long videoId,
             Authentication authentication) {
 
         log.info("Completing upload for video ID: {}", videoId);
 
         String username = authentication.getName();
-        VideoDTO videoDTO = videoUploadService.completeUpload(username, videoId);
+        UploadFinalizationDTO finalization = videoUploadService.completeUpload(username, videoId);
+
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(WebResponseDTO.success(finalization, "Upload finalization started"));
+    }
+
+    @GetMapping("/upload/finalization/{jobId}")
+    public ResponseEntity<WebResponseDTO<UploadFinalizationDTO>> getFinalizationStatus(
+            @PathVariable("jobId") String jobId,
+            Authentication authentication) {
+
+        log.info("Getting finalization status for job: {}", jobId);
+
+        String username = authentication.getName();
+        UploadFinalizationDTO finalization = videoUploadService.getFinalizationStatus(username, jobId);
 
-        return ResponseEntity.ok(WebResponseDTO.success(videoDTO, "Upload completed successfully"));
+        return ResponseEntity.ok(WebResponseDTO.success(finalization, "Finalization status retrieved successfully"));
     }
 }
\ No newline at end of file
@@ -5,12 +5,16 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 /**
  * ChunkUploadDTO
  *
  * Purpose: Communicates chunk upload status back to the client.
  * This DTO helps clients track their upload progress and know which
- * chunk to send next, supporting reliable resumable uploads.
+ * chunk to send next, supporting reliable resumable uploads. Chunks may be
+ * sent in any order and in parallel; missingRanges lists what is still
+ * outstanding as inclusive ranges such as "3-7".
  */
 @Data
 @Builder
@@ -21,4 +25,7 @@ public class ChunkUploadDTO {
     private int chunkNumber;
     private boolean received;
     private int nextExpectedChunk;
+    private int totalChunks;
+    private int receivedCount;
+    private List<String> missingRanges;
 }
\ No newline at end of file
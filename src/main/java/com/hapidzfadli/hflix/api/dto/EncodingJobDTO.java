@@ -0,0 +1,46 @@
+package com.hapidzfadli.hflix.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * EncodingJobDTO
+ *
+ * Purpose: Describes one unit of encoding work published to the encoding queue.
+ * A RENDITION job produces a single resolution and codec; a LADDER job produces
+ * every listed resolution of one codec from a single decode of the original.
+ * An AUDIO job encodes the audio track once per audio codec and then publishes the
+ * video jobs, which are encoded without audio and reuse it.
+ * SPLIT, CHUNK and STITCH jobs make up segment-parallel encoding: the original is
+ * cut into keyframe-aligned chunks, each chunk of each format is encoded as its own
+ * job, and the encoded chunks are concatenated into the finished rendition.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EncodingJobDTO {
+    private Long videoId;
+    private Long formatId;
+    private String resolution;
+    private String codec;
+    private List<String> resolutions;
+    private Integer chunkIndex;
+    private Integer duration;
+
+    @Builder.Default
+    private Mode mode = Mode.RENDITION;
+
+    public enum Mode {
+        RENDITION,
+        LADDER,
+        AUDIO,
+        SPLIT,
+        CHUNK,
+        STITCH
+    }
+}
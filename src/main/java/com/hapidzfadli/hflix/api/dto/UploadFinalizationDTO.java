@@ -0,0 +1,26 @@
+package com.hapidzfadli.hflix.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * UploadFinalizationDTO
+ *
+ * Purpose: Reports the progress of an upload's background finalization, in which
+ * the received chunks are assembled into the original and handed to encoding.
+ * Returned when finalization is requested and by the finalization status endpoint.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadFinalizationDTO {
+    private String jobId;
+    private Long videoId;
+    private String status;
+    private String step;
+    private String error;
+    private String videoStatus;
+}
@@ -0,0 +1,26 @@
+package com.hapidzfadli.hflix.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * UploadStatusDTO
+ *
+ * Purpose: Tells a client which chunks of an open upload the server already holds,
+ * so that after a disconnect or restart it only needs to send the rest.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadStatusDTO {
+    private Long videoId;
+    private Integer totalChunks;
+    private int receivedCount;
+    private List<Integer> receivedChunks;
+    private List<String> missingRanges;
+}
@@ -24,5 +24,7 @@ public class VideoStreamInfoDTO {
     private String title;
     private Integer duration;
     private String thumbnailUrl;
+    private String hlsUrl;
+    private String dashUrl;
     private List<VideoFormatDTO> formats;
 }
@@ -5,12 +5,16 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 /**
  * VideoUploadResponseDTO
  *
  * Purpose: Provides necessary information to the client after upload initialization.
  * This DTO contains all the details a client needs to begin the chunked upload process,
  * including the upload endpoint, recommended chunk size, and tracking identifiers.
+ * For presigned uploads it instead carries one presigned PUT URL per part, in chunk
+ * order, which the client uploads to directly.
  */
 @Data
 @Builder
@@ -21,4 +25,6 @@ public class VideoUploadResponseDTO {
     private String uploadUrl;
     private int maxChunkSize; // in bytes
     private boolean resumable;
+    private Integer totalChunks;
+    private List<String> partUrls;
 }
\ No newline at end of file
@@ -3,8 +3,10 @@ package com.hapidzfadli.hflix.api.exception;
 
 import com.hapidzfadli.hflix.api.dto.WebResponseDTO;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -68,6 +70,21 @@ public class GlobalExceptionHandler {
     }
 
 
+    // Handle object storage being shed or unavailable
+    @ExceptionHandler(StorageUnavailableException.class)
+    public ResponseEntity<WebResponseDTO<String>> handleStorageUnavailable(
+            StorageUnavailableException ex, HttpServletResponse response) {
+
+        log.warn("Storage unavailable: {}", ex.getMessage());
+        if (!response.isCommitted()) {
+            // Streaming endpoints refuse from inside the body, after their 206 headers were set
+            response.reset();
+        }
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(WebResponseDTO.error(ex.getMessage()));
+    }
+
     // Handle IllegalArgumentException
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<WebResponseDTO<String>> handleIllegalArgumentException(
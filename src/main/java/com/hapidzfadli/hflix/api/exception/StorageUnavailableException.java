@@ -0,0 +1,20 @@
+package com.hapidzfadli.hflix.api.exception;
+
+/**
+ * Thrown when a request needs object storage but is refused up front, either because
+ * the storage circuit is open or because too many calls of the same kind are already
+ * waiting on it. Answered with 503 and a Retry-After of {@link #getRetryAfterSeconds()}.
+ */
+public class StorageUnavailableException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public StorageUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -4,12 +4,26 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
 
 public interface MinioService {
     void uploadFile(String bucketName, String objectName, File file) throws Exception;
     void uploadFile(String bucketName, String objectName, MultipartFile file) throws Exception;
+    void uploadStream(String bucketName, String objectName, InputStream stream, long size) throws Exception;
     InputStream getObject(String bucketName, String objectName) throws Exception;
     InputStream getObjectRange(String bucketName, String objectName, long start, long end) throws Exception;
+    long getObjectSize(String bucketName, String objectName) throws Exception;
     void deleteObject(String bucketName, String objectName) throws Exception;
     String getPresignedUrl(String bucketName, String objectName, int expirySeconds) throws Exception;
+    String createMultipartUpload(String bucketName, String objectName) throws Exception;
+    String uploadPart(String bucketName, String objectName, String uploadId, int partNumber, InputStream stream, long size) throws Exception;
+    String copyPart(String bucketName, String sourceObjectName, String objectName, String uploadId, int partNumber) throws Exception;
+    void completeMultipartUpload(String bucketName, String objectName, String uploadId, Map<Integer, String> partETags) throws Exception;
+    void abortMultipartUpload(String bucketName, String objectName, String uploadId) throws Exception;
+    String getPresignedPartUrl(String bucketName, String objectName, String uploadId, int partNumber, int expirySeconds) throws Exception;
+    List<UploadedPart> listParts(String bucketName, String objectName, String uploadId) throws Exception;
+
+    record UploadedPart(int partNumber, String eTag, long size) {
+    }
 }
@@ -0,0 +1,16 @@
+package com.hapidzfadli.hflix.app.service;
+
+import com.hapidzfadli.hflix.domain.entity.Video;
+
+import java.io.File;
+
+public interface SourceCacheService {
+    Lease acquire(Video video) throws Exception;
+
+    interface Lease extends AutoCloseable {
+        File getFile();
+
+        @Override
+        void close();
+    }
+}
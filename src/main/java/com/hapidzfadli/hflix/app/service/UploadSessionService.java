@@ -0,0 +1,36 @@
+package com.hapidzfadli.hflix.app.service;
+
+import com.hapidzfadli.hflix.domain.entity.UploadChunk;
+import com.hapidzfadli.hflix.domain.entity.UploadSession;
+import com.hapidzfadli.hflix.domain.entity.Video;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface UploadSessionService {
+    UploadSession createSession(Video video, String multipartUploadId, String tempDirectory);
+    UploadSession createPresignedSession(Video video, String multipartUploadId, int totalChunks);
+    Optional<UploadSession> getSession(Long videoId);
+    Optional<UploadSession> getSessionByFinalizationId(String finalizationId);
+    UploadSession recordChunk(Long videoId, int chunkNumber, int totalChunks, String partETag, String sha256, long size);
+    UploadSession recordChunks(Long videoId, List<UploadChunk> chunks);
+    boolean isReceived(UploadSession session, int chunkNumber);
+    boolean isComplete(UploadSession session);
+    int getNextMissingChunk(UploadSession session);
+    List<String> getMissingRanges(UploadSession session);
+    List<Integer> getReceivedChunks(UploadSession session);
+    List<UploadChunk> getChunks(UploadSession session);
+    void enablePrefixStage(Long videoId, int prefixChunks);
+    boolean isPrefixChunk(UploadSession session, int chunkNumber);
+    boolean isPrefixReady(UploadSession session);
+    boolean claimPrefixStage(UploadSession session);
+    void completePrefixStage(Long sessionId, boolean succeeded);
+    boolean isPrefixStageRunning(Long sessionId, LocalDateTime staleBefore);
+    boolean claimFinalization(UploadSession session, String finalizationId, LocalDateTime staleBefore);
+    boolean renewFinalization(Long sessionId, String finalizationId);
+    boolean updateFinalization(Long sessionId, String finalizationId, UploadSession.Status status,
+                               UploadSession.FinalizationStep step, String errorMessage);
+    boolean completeFinalization(Long sessionId, String finalizationId);
+    void rejectSession(Long sessionId, String reason);
+}
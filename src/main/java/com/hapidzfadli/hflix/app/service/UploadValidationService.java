@@ -0,0 +1,7 @@
+package com.hapidzfadli.hflix.app.service;
+
+public interface UploadValidationService {
+    int getHeaderLength();
+    String validateHeader(String filename, byte[] header);
+    boolean isFastStart(byte[] header);
+}
@@ -5,7 +5,16 @@ import com.hapidzfadli.hflix.domain.entity.VideoFormat;
 
 public interface VideoEncodingService {
     void startEncodingJob(Video video);
-    void processEncodingJob(Long videoId, String resolution, String codec);
-    void updateEncodingStatus(Long videoId, String resolution, VideoFormat.Status status, int progress);
+    void startPrefixEncoding(Video video, String input);
+    String getEncodingProfile();
+    void reuseEncodedFormats(Video video, Video source);
+    void processEncodingJob(Long videoId, String resolution, String codec, int threads);
+    void processLadderEncodingJob(Long videoId, String codec, int threads);
+    void processAudioJob(Long videoId, int threads);
+    void processSplitJob(Long videoId);
+    void processChunkEncodingJob(Long videoId, Long formatId, int chunkIndex, int threads);
+    void processStitchJob(Long videoId, Long formatId);
+    void updateEncodingStatus(Long videoId, String resolution, String codec, VideoFormat.Status status, int progress);
     void generateThumbnail(Video video);
+    boolean generateThumbnail(Video video, String input, double maxSeconds);
 }
@@ -0,0 +1,19 @@
+package com.hapidzfadli.hflix.app.service;
+
+import com.hapidzfadli.hflix.domain.entity.Video;
+import com.hapidzfadli.hflix.domain.entity.VideoFormat;
+
+import java.io.File;
+
+public interface VideoPackagingService {
+    String packageRendition(Video video, VideoFormat format, File encodedFile) throws Exception;
+
+    /**
+     * Writes the HLS and DASH manifests of a video's READY packaged renditions.
+     *
+     * @return the manifest prefix, or null if no rendition has been packaged.
+     */
+    String writeManifests(Video video) throws Exception;
+
+    String getPackagePrefix(Video video);
+}
@@ -0,0 +1,8 @@
+package com.hapidzfadli.hflix.app.service;
+
+import com.hapidzfadli.hflix.domain.entity.Video;
+
+public interface VideoProbeService {
+    boolean probeSource(Video video);
+    boolean probeSource(Video video, String input);
+}
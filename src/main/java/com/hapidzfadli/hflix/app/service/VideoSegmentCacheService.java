@@ -0,0 +1,7 @@
+package com.hapidzfadli.hflix.app.service;
+
+import java.io.OutputStream;
+
+public interface VideoSegmentCacheService {
+    void transferRange(String objectName, long objectSize, long start, long end, OutputStream out) throws Exception;
+}
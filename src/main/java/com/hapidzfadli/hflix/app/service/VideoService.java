@@ -5,12 +5,14 @@ import com.hapidzfadli.hflix.api.dto.VideoStreamInfoDTO;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 public interface VideoService {
     VideoDTO getVideo(Long id);
     Page<VideoDTO> findPublicVideos(String keyword, Pageable pageable);
     Page<VideoDTO> findUserVideos(String username, String keyword, Pageable pageable);
     VideoStreamInfoDTO getVideoStreamInfo(Long videoId);
-    ResponseEntity<byte[]> streamVideo(Long videoId, String resolution, String rangeHeader);
+    ResponseEntity<StreamingResponseBody> streamVideo(Long videoId, String resolution, String rangeHeader);
+    ResponseEntity<StreamingResponseBody> streamPackagedObject(Long videoId, String path);
     void recordVideoView(Long videoId, String username, String ipAddress, String userAgent, String resolution);
 }
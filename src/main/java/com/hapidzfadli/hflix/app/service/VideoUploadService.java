@@ -1,12 +1,18 @@
 package com.hapidzfadli.hflix.app.service;
 
 import com.hapidzfadli.hflix.api.dto.ChunkUploadDTO;
-import com.hapidzfadli.hflix.api.dto.VideoDTO;
+import com.hapidzfadli.hflix.api.dto.UploadStatusDTO;
+import com.hapidzfadli.hflix.api.dto.UploadFinalizationDTO;
 import com.hapidzfadli.hflix.api.dto.VideoUploadResponseDTO;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+
 public interface VideoUploadService {
     VideoUploadResponseDTO initializeUpload(String username, String filename, long fileSize, String title, String description);
     ChunkUploadDTO uploadChunk(String username, Long videoId, int chunkNumber, int totalChunks, MultipartFile chunk);
-    VideoDTO completeUpload(String username, Long videoId);
+    ChunkUploadDTO uploadChunk(String username, Long videoId, int chunkNumber, int totalChunks, InputStream body, long size, String expectedSha256);
+    UploadStatusDTO getUploadStatus(String username, Long videoId);
+    UploadFinalizationDTO completeUpload(String username, Long videoId);
+    UploadFinalizationDTO getFinalizationStatus(String username, String jobId);
 }
@@ -1,31 +1,103 @@
 package com.hapidzfadli.hflix.app.service.impl;
 
+import com.amazonaws.HttpMethod;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.hapidzfadli.hflix.app.service.MinioService;
 import io.minio.*;
+import io.minio.http.Method;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class MinioServiceImpl implements MinioService {
 
+    // S3 allows at most 10,000 parts per multipart upload
+    private static final int MAX_PARTS = 10000;
+
     private final MinioClient minioClient;
+    private final AmazonS3 amazonS3;
+
+    @Value("${minio.upload.multipart-threshold}")
+    private long multipartThreshold;
+
+    @Value("${minio.upload.part-size}")
+    private long partSize;
+
+    @Value("${minio.upload.parallelism}")
+    private int uploadParallelism;
+
+    @Value("${minio.upload.part-attempts}")
+    private int partAttempts;
+
+    private ExecutorService uploadExecutor;
+
+    @PostConstruct
+    public void init() {
+        // Shared by every upload on this node, which bounds the parts in flight regardless of how many files are uploaded
+        uploadExecutor = Executors.newFixedThreadPool(Math.max(1, uploadParallelism), runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("minio-upload-" + thread.getId());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadExecutor.shutdownNow();
+    }
 
+    /**
+     * Uploads a local file. Files at or above the multipart threshold are split into parts
+     * that are uploaded concurrently; smaller ones go out as a single stream.
+     */
     @Override
     public void uploadFile(String bucketName, String objectName, File file) throws Exception{
+        long size = file.length();
+        if (size >= multipartThreshold) {
+            uploadFileInParts(bucketName, objectName, file, size);
+            return;
+        }
+
         try (FileInputStream fis = new FileInputStream(file)) {
             minioClient.putObject(
                     PutObjectArgs.builder()
                             .bucket(bucketName)
                             .object(objectName)
-                            .stream(fis, fis.available(), -1)
+                            .stream(fis, size, -1)
                             .contentType(getContentType(objectName))
                             .build()
             );
@@ -46,6 +118,19 @@ public class MinioServiceImpl implements MinioService {
         log.info("Uploaded file {} to bucket {}", objectName, bucketName);
     }
 
+    @Override
+    public void uploadStream(String bucketName, String objectName, InputStream stream, long size) throws Exception {
+        minioClient.putObject(
+                PutObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .stream(stream, size, -1)
+                        .contentType(getContentType(objectName))
+                        .build()
+        );
+        log.info("Uploaded stream {} ({} bytes) to bucket {}", objectName, size, bucketName);
+    }
+
     @Override
     public InputStream getObject(String bucketName, String objectName) throws Exception {
         return minioClient.getObject(
@@ -68,6 +153,16 @@ public class MinioServiceImpl implements MinioService {
         );
     }
 
+    @Override
+    public long getObjectSize(String bucketName, String objectName) throws Exception {
+        return minioClient.statObject(
+                StatObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .build()
+        ).size();
+    }
+
     @Override
     public void deleteObject(String bucketName, String objectName) throws Exception {
         minioClient.removeObject(
@@ -82,6 +177,7 @@ public class MinioServiceImpl implements MinioService {
     public String getPresignedUrl(String bucketName, String objectName, int expirySeconds) throws Exception {
         return minioClient.getPresignedObjectUrl(
                 GetPresignedObjectUrlArgs.builder()
+                        .method(Method.GET)
                         .bucket(bucketName)
                         .object(objectName)
                         .expiry(expirySeconds)
@@ -89,7 +185,154 @@ public class MinioServiceImpl implements MinioService {
         );
     }
 
+    @Override
+    public String createMultipartUpload(String bucketName, String objectName) throws Exception {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(getContentType(objectName));
 
+        String uploadId = amazonS3.initiateMultipartUpload(
+                new InitiateMultipartUploadRequest(bucketName, objectName, metadata)
+        ).getUploadId();
+        log.info("Started multipart upload {} for {} in bucket {}", uploadId, objectName, bucketName);
+        return uploadId;
+    }
+
+    @Override
+    public String uploadPart(String bucketName, String objectName, String uploadId, int partNumber,
+                             InputStream stream, long size) throws Exception {
+        return amazonS3.uploadPart(
+                new UploadPartRequest()
+                        .withBucketName(bucketName)
+                        .withKey(objectName)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+                        .withInputStream(stream)
+                        .withPartSize(size)
+        ).getETag();
+    }
+
+    /**
+     * Copies an existing object into a multipart upload as one of its parts. The copy
+     * happens inside object storage, so none of the bytes pass through this service.
+     */
+    @Override
+    public String copyPart(String bucketName, String sourceObjectName, String objectName, String uploadId,
+                           int partNumber) throws Exception {
+        return amazonS3.copyPart(
+                new CopyPartRequest()
+                        .withSourceBucketName(bucketName)
+                        .withSourceKey(sourceObjectName)
+                        .withDestinationBucketName(bucketName)
+                        .withDestinationKey(objectName)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+        ).getETag();
+    }
+
+    @Override
+    public void completeMultipartUpload(String bucketName, String objectName, String uploadId,
+                                        Map<Integer, String> partETags) throws Exception {
+        List<PartETag> parts = new TreeMap<>(partETags).entrySet().stream()
+                .map(part -> new PartETag(part.getKey(), part.getValue()))
+                .toList();
+
+        amazonS3.completeMultipartUpload(
+                new CompleteMultipartUploadRequest(bucketName, objectName, uploadId, parts)
+        );
+        log.info("Completed multipart upload of {} ({} parts) to bucket {}", objectName, parts.size(), bucketName);
+    }
+
+    @Override
+    public void abortMultipartUpload(String bucketName, String objectName, String uploadId) throws Exception {
+        amazonS3.abortMultipartUpload(
+                new AbortMultipartUploadRequest(bucketName, objectName, uploadId)
+        );
+        log.info("Aborted multipart upload {} for {}", uploadId, objectName);
+    }
+
+    @Override
+    public String getPresignedPartUrl(String bucketName, String objectName, String uploadId, int partNumber,
+                                      int expirySeconds) throws Exception {
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucketName, objectName, HttpMethod.PUT)
+                .withExpiration(new Date(System.currentTimeMillis() + expirySeconds * 1000L));
+        request.addRequestParameter("uploadId", uploadId);
+        request.addRequestParameter("partNumber", String.valueOf(partNumber));
+        return amazonS3.generatePresignedUrl(request).toString();
+    }
+
+    @Override
+    public List<UploadedPart> listParts(String bucketName, String objectName, String uploadId) throws Exception {
+        List<UploadedPart> parts = new ArrayList<>();
+        ListPartsRequest request = new ListPartsRequest(bucketName, objectName, uploadId);
+
+        PartListing listing;
+        do {
+            listing = amazonS3.listParts(request);
+            listing.getParts().forEach(part -> parts.add(
+                    new UploadedPart(part.getPartNumber(), part.getETag(), part.getSize())));
+            request.setPartNumberMarker(listing.getNextPartNumberMarker());
+        } while (listing.isTruncated());
+
+        return parts;
+    }
+
+    /**
+     * Uploads a file as a multipart upload whose parts are sent concurrently on the shared
+     * upload pool. Every part is read through its own read-only mapping of the file, so no
+     * part is copied through the heap, and a part that fails can simply be mapped again.
+     */
+    private void uploadFileInParts(String bucketName, String objectName, File file, long size) throws Exception {
+        long effectivePartSize = Math.max(partSize, (size + MAX_PARTS - 1) / MAX_PARTS);
+        int partCount = (int) ((size + effectivePartSize - 1) / effectivePartSize);
+        long started = System.currentTimeMillis();
+
+        String uploadId = createMultipartUpload(bucketName, objectName);
+        List<Future<String>> parts = new ArrayList<>(partCount);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int i = 0; i < partCount; i++) {
+                int partNumber = i + 1;
+                long offset = i * effectivePartSize;
+                long length = Math.min(effectivePartSize, size - offset);
+                parts.add(uploadExecutor.submit(() ->
+                        uploadMappedPart(bucketName, objectName, uploadId, partNumber, channel, offset, length)));
+            }
+
+            Map<Integer, String> partETags = new TreeMap<>();
+            for (int i = 0; i < partCount; i++) {
+                partETags.put(i + 1, parts.get(i).get());
+            }
+            completeMultipartUpload(bucketName, objectName, uploadId, partETags);
+
+            log.info("Uploaded file {} ({} bytes, {} parts) to bucket {} in {} ms", objectName, size, partCount,
+                    bucketName, System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            parts.forEach(part -> part.cancel(true));
+            try {
+                abortMultipartUpload(bucketName, objectName, uploadId);
+            } catch (Exception abortError) {
+                log.warn("Could not abort multipart upload {} for {}", uploadId, objectName, abortError);
+            }
+            if (e instanceof ExecutionException && e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private String uploadMappedPart(String bucketName, String objectName, String uploadId, int partNumber,
+                                    FileChannel channel, long offset, long length) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            ByteBuffer part = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            try {
+                return uploadPart(bucketName, objectName, uploadId, partNumber, new ByteBufferInputStream(part), length);
+            } catch (Exception e) {
+                if (attempt >= partAttempts || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                log.warn("Attempt {} to upload part {} of {} failed, retrying", attempt, partNumber, objectName, e);
+            }
+        }
+    }
 
     private String getContentType(String fileName) {
         String extension = fileName.substring(fileName.lastIndexOf(".") + 1).toLowerCase();
@@ -98,6 +341,12 @@ public class MinioServiceImpl implements MinioService {
                 return "video/mp4";
             case "webm":
                 return "video/webm";
+            case "m4s":
+                return "video/iso.segment";
+            case "m3u8":
+                return "application/vnd.apple.mpegurl";
+            case "mpd":
+                return "application/dash+xml";
             case "jpg":
             case "jpeg":
                 return "image/jpeg";
@@ -107,4 +356,54 @@ public class MinioServiceImpl implements MinioService {
                 return "application/octet-stream";
         }
     }
+
+    /**
+     * Reads a mapped part of a file. Marking is supported, so the S3 client can rewind the
+     * part for its own retries without buffering a copy of it.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            buffer.mark();
+        }
+
+        @Override
+        public synchronized void reset() {
+            buffer.reset();
+        }
+    }
 }
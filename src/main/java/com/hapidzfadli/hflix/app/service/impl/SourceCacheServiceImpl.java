@@ -0,0 +1,253 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.MinioService;
+import com.hapidzfadli.hflix.app.service.SourceCacheService;
+import com.hapidzfadli.hflix.config.MinioConfig;
+import com.hapidzfadli.hflix.domain.entity.Video;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+/**
+ * Node-local cache of original uploads shared by every encoding job on this node.
+ * Concurrent jobs for the same video share a single download; the file is removed
+ * once the last job releases it and the idle grace period has passed, or earlier
+ * when the disk budget is exceeded.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SourceCacheServiceImpl implements SourceCacheService {
+
+    private final MinioService minioService;
+    private final MinioConfig minioConfig;
+
+    @Value("${video.source-cache.directory}")
+    private String directory;
+
+    @Value("${video.source-cache.max-size}")
+    private long maxSize;
+
+    @Value("${video.source-cache.idle-ttl-seconds}")
+    private long idleTtlSeconds;
+
+    private Path root;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long residentBytes;
+
+    @PostConstruct
+    public void init() throws Exception {
+        root = Paths.get(directory);
+        Files.createDirectories(root);
+
+        // Nothing survives a restart: no job holds a lease on files from a previous run
+        try (Stream<Path> files = Files.list(root)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Override
+    public Lease acquire(Video video) throws Exception {
+        String key = video.getS3Path();
+        Entry entry;
+        boolean owner = false;
+
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, root.resolve(UUID.randomUUID() + getExtension(key)));
+                entries.put(key, entry);
+                owner = true;
+            }
+            entry.references++;
+        }
+
+        if (owner) {
+            download(entry);
+        }
+
+        try {
+            File file = entry.download.join();
+            return new CachedLease(entry, file);
+        } catch (CompletionException e) {
+            release(entry);
+            throw new IllegalStateException("Failed to fetch original for video ID: " + video.getId(), e.getCause());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${video.source-cache.sweep-interval-ms:30000}")
+    public void evictIdle() {
+        List<Entry> evicted = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            for (Entry entry : new ArrayList<>(entries.values())) {
+                if (entry.references == 0 && now - entry.releasedAt >= idleTtlSeconds * 1000) {
+                    remove(entry);
+                    evicted.add(entry);
+                }
+            }
+        }
+
+        evicted.forEach(this::deleteFile);
+    }
+
+    private void download(Entry entry) {
+        Path temp = root.resolve(entry.file.getFileName() + ".part");
+        try (InputStream is = minioService.getObject(minioConfig.getBucketName(), entry.key)) {
+            Files.copy(is, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, entry.file, StandardCopyOption.ATOMIC_MOVE);
+
+            List<Entry> evicted;
+            synchronized (this) {
+                entry.size = Files.size(entry.file);
+                residentBytes += entry.size;
+                evicted = evictOverBudget();
+            }
+            evicted.forEach(this::deleteFile);
+
+            log.info("Cached original {} ({} bytes) for encoding", entry.key, entry.size);
+            entry.download.complete(entry.file.toFile());
+
+        } catch (Exception e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (Exception ignored) {
+                // best effort
+            }
+            synchronized (this) {
+                entries.remove(entry.key, entry);
+            }
+            entry.download.completeExceptionally(e);
+        }
+    }
+
+    private void release(Entry entry) {
+        List<Entry> evicted = new ArrayList<>();
+
+        synchronized (this) {
+            entry.references--;
+            if (entry.references > 0) {
+                return;
+            }
+
+            entry.releasedAt = System.currentTimeMillis();
+            if (idleTtlSeconds <= 0 || !entry.download.isDone() || entry.download.isCompletedExceptionally()) {
+                remove(entry);
+                evicted.add(entry);
+            } else {
+                evicted.addAll(evictOverBudget());
+            }
+        }
+
+        evicted.forEach(this::deleteFile);
+    }
+
+    private List<Entry> evictOverBudget() {
+        List<Entry> evicted = new ArrayList<>();
+        if (residentBytes <= maxSize) {
+            return evicted;
+        }
+
+        List<Entry> idle = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.references == 0) {
+                idle.add(entry);
+            }
+        }
+        idle.sort(Comparator.comparingLong(entry -> entry.releasedAt));
+
+        for (Entry entry : idle) {
+            if (residentBytes <= maxSize) {
+                break;
+            }
+            remove(entry);
+            evicted.add(entry);
+        }
+
+        if (residentBytes > maxSize) {
+            log.warn("Source cache holds {} bytes in active use, above its {} byte budget", residentBytes, maxSize);
+        }
+        return evicted;
+    }
+
+    private void remove(Entry entry) {
+        if (entries.remove(entry.key, entry)) {
+            residentBytes -= entry.size;
+        }
+    }
+
+    private void deleteFile(Entry entry) {
+        try {
+            Files.deleteIfExists(entry.file);
+        } catch (Exception e) {
+            log.warn("Could not delete cached original {}", entry.file, e);
+        }
+    }
+
+    private String getExtension(String objectName) {
+        int lastDotPos = objectName.lastIndexOf(".");
+        int lastSlashPos = objectName.lastIndexOf("/");
+        return lastDotPos > lastSlashPos ? objectName.substring(lastDotPos) : "";
+    }
+
+    private static class Entry {
+        private final String key;
+        private final Path file;
+        private final CompletableFuture<File> download = new CompletableFuture<>();
+        private int references;
+        private long size;
+        private long releasedAt;
+
+        private Entry(String key, Path file) {
+            this.key = key;
+            this.file = file;
+        }
+    }
+
+    private class CachedLease implements Lease {
+        private final Entry entry;
+        private final File file;
+        private boolean closed;
+
+        private CachedLease(Entry entry, File file) {
+            this.entry = entry;
+            this.file = file;
+        }
+
+        @Override
+        public File getFile() {
+            return file;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(entry);
+            }
+        }
+    }
+}
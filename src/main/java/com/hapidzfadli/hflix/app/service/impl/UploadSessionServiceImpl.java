@@ -0,0 +1,320 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.UploadSessionService;
+import com.hapidzfadli.hflix.domain.entity.UploadChunk;
+import com.hapidzfadli.hflix.domain.entity.UploadSession;
+import com.hapidzfadli.hflix.domain.entity.Video;
+import com.hapidzfadli.hflix.domain.repository.UploadChunkRepository;
+import com.hapidzfadli.hflix.domain.repository.UploadSessionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Database-backed upload sessions. Chunk receipts are written under a row lock on the
+ * session, so chunks of the same upload can arrive concurrently, in any order, on any
+ * API node. The first chunk fixes the session's chunk count; every later chunk must
+ * agree with it.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class UploadSessionServiceImpl implements UploadSessionService {
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UploadChunkRepository uploadChunkRepository;
+
+    @Override
+    @Transactional
+    public UploadSession createSession(Video video, String multipartUploadId, String tempDirectory) {
+        UploadSession session = new UploadSession();
+        session.setVideo(video);
+        session.setMultipartUploadId(multipartUploadId);
+        session.setTempDirectory(tempDirectory);
+        return uploadSessionRepository.save(session);
+    }
+
+    @Override
+    @Transactional
+    public UploadSession createPresignedSession(Video video, String multipartUploadId, int totalChunks) {
+        UploadSession session = new UploadSession();
+        session.setVideo(video);
+        session.setMultipartUploadId(multipartUploadId);
+        session.setPresigned(true);
+        session.setTotalChunks(totalChunks);
+        return uploadSessionRepository.save(session);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<UploadSession> getSession(Long videoId) {
+        return uploadSessionRepository.findByVideoId(videoId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<UploadSession> getSessionByFinalizationId(String finalizationId) {
+        return uploadSessionRepository.findByFinalizationId(finalizationId);
+    }
+
+    @Override
+    @Transactional
+    public UploadSession recordChunk(Long videoId, int chunkNumber, int totalChunks, String partETag, String sha256, long size) {
+        UploadSession session = uploadSessionRepository.findByVideoIdForUpdate(videoId)
+                .orElseThrow(() -> new IllegalStateException("Upload session not found"));
+
+        if (session.getStatus() != UploadSession.Status.OPEN) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload is no longer accepting chunks");
+        }
+        // Checked again under the lock: a concurrent request may have fixed the count or stored this chunk
+        validateTotalChunks(session, totalChunks);
+        if (isReceived(session, chunkNumber)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Chunk " + chunkNumber + " has already been received");
+        }
+
+        UploadChunk chunk = new UploadChunk();
+        chunk.setUploadSession(session);
+        chunk.setChunkNumber(chunkNumber);
+        chunk.setPartETag(partETag);
+        chunk.setSha256(sha256);
+        chunk.setSize(size);
+        uploadChunkRepository.save(chunk);
+
+        BitSet received = BitSet.valueOf(session.getReceivedChunks());
+        received.set(chunkNumber);
+        session.setReceivedChunks(received.toByteArray());
+        session.setReceivedCount(received.cardinality());
+        session.setTotalChunks(totalChunks);
+
+        log.debug("Recorded chunk {} for video {}, {} received", chunkNumber, videoId, session.getReceivedCount());
+        return uploadSessionRepository.save(session);
+    }
+
+    /**
+     * Records chunks that were stored without passing through this service, e.g. parts
+     * uploaded through presigned URLs. The listing is authoritative: a chunk already recorded
+     * takes the listed ETag and size, since the client may have uploaded the part again after
+     * a failed completion. The same listing can therefore be recorded again on every retry.
+     */
+    @Override
+    @Transactional
+    public UploadSession recordChunks(Long videoId, List<UploadChunk> chunks) {
+        UploadSession session = uploadSessionRepository.findByVideoIdForUpdate(videoId)
+                .orElseThrow(() -> new IllegalStateException("Upload session not found"));
+        if (session.getStatus() != UploadSession.Status.OPEN && session.getStatus() != UploadSession.Status.FAILED) {
+            return session;
+        }
+
+        Map<Integer, UploadChunk> recorded = new HashMap<>();
+        uploadChunkRepository.findByUploadSessionOrderByChunkNumber(session)
+                .forEach(chunk -> recorded.put(chunk.getChunkNumber(), chunk));
+
+        BitSet received = BitSet.valueOf(session.getReceivedChunks());
+        for (UploadChunk chunk : chunks) {
+            UploadChunk existing = recorded.get(chunk.getChunkNumber());
+            if (existing == null) {
+                chunk.setUploadSession(session);
+                uploadChunkRepository.save(chunk);
+                received.set(chunk.getChunkNumber());
+            } else if (!Objects.equals(existing.getPartETag(), chunk.getPartETag())
+                    || !Objects.equals(existing.getSize(), chunk.getSize())) {
+                log.info("Part {} of video {} was uploaded again, updating its ETag", chunk.getChunkNumber() + 1, videoId);
+                existing.setPartETag(chunk.getPartETag());
+                existing.setSize(chunk.getSize());
+                uploadChunkRepository.save(existing);
+            }
+        }
+        session.setReceivedChunks(received.toByteArray());
+        session.setReceivedCount(received.cardinality());
+        return uploadSessionRepository.save(session);
+    }
+
+    @Override
+    public boolean isReceived(UploadSession session, int chunkNumber) {
+        return BitSet.valueOf(session.getReceivedChunks()).get(chunkNumber);
+    }
+
+    @Override
+    public boolean isComplete(UploadSession session) {
+        return session.getTotalChunks() != null && session.getReceivedCount() == session.getTotalChunks();
+    }
+
+    @Override
+    public int getNextMissingChunk(UploadSession session) {
+        return BitSet.valueOf(session.getReceivedChunks()).nextClearBit(0);
+    }
+
+    /**
+     * Returns the chunk numbers not yet received as inclusive ranges, e.g. {@code ["3-7", "12"]}.
+     * Empty until the first chunk has fixed the chunk count.
+     */
+    @Override
+    public List<String> getMissingRanges(UploadSession session) {
+        List<String> ranges = new ArrayList<>();
+        if (session.getTotalChunks() == null) {
+            return ranges;
+        }
+
+        BitSet received = BitSet.valueOf(session.getReceivedChunks());
+        int total = session.getTotalChunks();
+        int start = received.nextClearBit(0);
+        while (start < total) {
+            int next = received.nextSetBit(start);
+            int end = (next < 0 || next > total ? total : next) - 1;
+            ranges.add(start == end ? String.valueOf(start) : start + "-" + end);
+            start = received.nextClearBit(end + 1);
+        }
+        return ranges;
+    }
+
+    @Override
+    public List<Integer> getReceivedChunks(UploadSession session) {
+        return BitSet.valueOf(session.getReceivedChunks()).stream().boxed().toList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UploadChunk> getChunks(UploadSession session) {
+        return uploadChunkRepository.findByUploadSessionOrderByChunkNumber(session);
+    }
+
+    /**
+     * Gives the session a prefix stage covering its first {@code prefixChunks} chunks. Must be
+     * called before the first chunk is recorded, since no other chunk is accepted before it and
+     * every chunk of the prefix has to know it belongs to it.
+     */
+    @Override
+    @Transactional
+    public void enablePrefixStage(Long videoId, int prefixChunks) {
+        UploadSession session = uploadSessionRepository.findByVideoIdForUpdate(videoId)
+                .orElseThrow(() -> new IllegalStateException("Upload session not found"));
+        if (session.getPrefixStage() == null) {
+            session.setPrefixChunks(prefixChunks);
+            session.setPrefixStage(UploadSession.PrefixStage.WAITING);
+            uploadSessionRepository.save(session);
+        }
+    }
+
+    @Override
+    public boolean isPrefixChunk(UploadSession session, int chunkNumber) {
+        return session.getPrefixChunks() != null && chunkNumber < session.getPrefixChunks();
+    }
+
+    /**
+     * A prefix is ready once all of its chunks have arrived and the upload has chunks beyond it;
+     * an upload that fits in its prefix is finalized as a whole instead.
+     */
+    @Override
+    public boolean isPrefixReady(UploadSession session) {
+        return session.getPrefixStage() == UploadSession.PrefixStage.WAITING
+                && session.getTotalChunks() != null
+                && session.getPrefixChunks() < session.getTotalChunks()
+                && getNextMissingChunk(session) >= session.getPrefixChunks();
+    }
+
+    @Override
+    public boolean claimPrefixStage(UploadSession session) {
+        return uploadSessionRepository.claimPrefixStage(session.getId(),
+                UploadSession.PrefixStage.WAITING, UploadSession.PrefixStage.RUNNING, LocalDateTime.now()) == 1;
+    }
+
+    @Override
+    public void completePrefixStage(Long sessionId, boolean succeeded) {
+        uploadSessionRepository.updatePrefixStage(sessionId, UploadSession.PrefixStage.RUNNING,
+                succeeded ? UploadSession.PrefixStage.DONE : UploadSession.PrefixStage.FAILED);
+    }
+
+    /**
+     * @param staleBefore Prefix stages started before this time are considered abandoned.
+     * @return true if the session's prefix stage is running and has not been abandoned.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public boolean isPrefixStageRunning(Long sessionId, LocalDateTime staleBefore) {
+        return uploadSessionRepository.findById(sessionId)
+                .filter(session -> session.getPrefixStage() == UploadSession.PrefixStage.RUNNING)
+                .filter(session -> session.getPrefixStartedAt() != null && session.getPrefixStartedAt().isAfter(staleBefore))
+                .isPresent();
+    }
+
+    @Override
+    public boolean claimFinalization(UploadSession session, String finalizationId, LocalDateTime staleBefore) {
+        // updatedAt is stamped from the same clock as staleBefore and @UpdateTimestamp, never the database's,
+        // so a skew between the two cannot make a live finalization look abandoned
+        return uploadSessionRepository.claimFinalization(session.getId(), finalizationId,
+                UploadSession.FinalizationStep.QUEUED, UploadSession.Status.FINALIZING,
+                List.of(UploadSession.Status.OPEN, UploadSession.Status.FAILED), staleBefore, LocalDateTime.now()) == 1;
+    }
+
+    @Override
+    public boolean renewFinalization(Long sessionId, String finalizationId) {
+        return uploadSessionRepository.renewFinalization(sessionId, finalizationId, LocalDateTime.now()) == 1;
+    }
+
+    /**
+     * Records the progress or outcome of a finalization. Every write is fenced by the
+     * finalization ID, so a finalizer that was taken over by a retry finds out here and stops
+     * instead of overwriting the session of the one that replaced it.
+     *
+     * @param step The step reached, or null to keep the current one.
+     * @return false if the finalization has been superseded.
+     */
+    @Override
+    public boolean updateFinalization(Long sessionId, String finalizationId, UploadSession.Status status,
+                                      UploadSession.FinalizationStep step, String errorMessage) {
+        int updated = step != null
+                ? uploadSessionRepository.updateFinalizationStep(sessionId, finalizationId, status, step, LocalDateTime.now())
+                : uploadSessionRepository.updateFinalizationStatus(sessionId, finalizationId, status, errorMessage,
+                        LocalDateTime.now());
+        return updated == 1;
+    }
+
+    /**
+     * Marks a session's finalization as done. The session row is kept so the job's status can
+     * still be queried; the per-chunk records are no longer needed and are removed.
+     *
+     * @return false if the finalization has been superseded.
+     */
+    @Override
+    @Transactional
+    public boolean completeFinalization(Long sessionId, String finalizationId) {
+        if (uploadSessionRepository.updateFinalizationStep(sessionId, finalizationId,
+                UploadSession.Status.COMPLETED, UploadSession.FinalizationStep.DONE, LocalDateTime.now()) == 0) {
+            return false;
+        }
+        uploadSessionRepository.findById(sessionId).ifPresent(uploadChunkRepository::deleteByUploadSession);
+        return true;
+    }
+
+    /**
+     * Rejects an upload that is still receiving chunks, before any finalization has started.
+     */
+    @Override
+    @Transactional
+    public void rejectSession(Long sessionId, String reason) {
+        uploadSessionRepository.findById(sessionId).ifPresent(session -> {
+            session.setStatus(UploadSession.Status.REJECTED);
+            session.setErrorMessage(reason);
+            uploadSessionRepository.save(session);
+        });
+    }
+
+    private void validateTotalChunks(UploadSession session, int totalChunks) {
+        if (session.getTotalChunks() != null && session.getTotalChunks() != totalChunks) {
+            throw new IllegalArgumentException("Upload was started with " + session.getTotalChunks() +
+                    " chunks, not " + totalChunks);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.UploadValidationService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.Tika;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Checks the first bytes of an upload before the rest of it is accepted. The container
+ * is detected from its magic bytes with Tika and must be one of the configured types,
+ * and the container header itself is walked far enough to tell a real file from
+ * something that merely starts with the right signature.
+ */
+@Service
+@Slf4j
+public class UploadValidationServiceImpl implements UploadValidationService {
+
+    private static final int HEADER_LENGTH = 64 * 1024;
+    private static final Set<String> ISO_BMFF_BOXES = Set.of("ftyp", "moov", "mdat", "free", "skip", "wide", "pnot", "uuid");
+
+    private final Tika tika = new Tika();
+    private final Set<String> allowedTypes;
+
+    public UploadValidationServiceImpl(@Value("${video.upload.allowed-types}") String allowedTypes) {
+        this.allowedTypes = Arrays.stream(allowedTypes.split(","))
+                .map(String::trim)
+                .filter(type -> !type.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public int getHeaderLength() {
+        return HEADER_LENGTH;
+    }
+
+    /**
+     * @param filename The original filename, used only as a hint when the magic bytes are ambiguous.
+     * @param header Up to {@link #getHeaderLength()} bytes from the start of the upload.
+     * @return The detected media type.
+     * @throws IllegalArgumentException if the upload is not a supported video container.
+     */
+    @Override
+    public String validateHeader(String filename, byte[] header) {
+        String type = tika.detect(header, filename);
+        if (!allowedTypes.contains(type)) {
+            throw new IllegalArgumentException("Unsupported file type: " + type);
+        }
+
+        boolean valid;
+        if (isIsoBmff(header)) {
+            valid = checkIsoBmff(header);
+        } else if (startsWith(header, 0x1A, 0x45, 0xDF, 0xA3)) {
+            valid = checkEbml(header);
+        } else if (startsWith(header, 'R', 'I', 'F', 'F')) {
+            valid = header.length >= 12 && new String(header, 8, 4, StandardCharsets.US_ASCII).equals("AVI ");
+        } else if (header.length > 0 && header[0] == 0x47) {
+            valid = checkTransportStream(header);
+        } else {
+            // Other allowed containers are accepted on their magic bytes alone
+            valid = true;
+        }
+
+        if (!valid) {
+            throw new IllegalArgumentException("Malformed " + type + " header");
+        }
+        log.debug("Upload {} detected as {}", filename, type);
+        return type;
+    }
+
+    /**
+     * Tells whether an ISO BMFF upload carries its moov box ahead of the media data, so the
+     * whole sample table, and with it the duration and every keyframe, can be read from the
+     * first chunks alone.
+     *
+     * @param header Up to {@link #getHeaderLength()} bytes from the start of an upload that passed validation.
+     * @return true if a moov box starts before the first mdat box.
+     */
+    @Override
+    public boolean isFastStart(byte[] header) {
+        if (!isIsoBmff(header)) {
+            return false;
+        }
+
+        int offset = 0;
+        while (offset + 8 <= header.length) {
+            long size = readUnsigned(header, offset, 4);
+            String type = new String(header, offset + 4, 4, StandardCharsets.US_ASCII);
+            if (type.equals("moov")) {
+                return true;
+            }
+            if (type.equals("mdat")) {
+                return false;
+            }
+
+            if (size == 1) {
+                if (offset + 16 > header.length) {
+                    return false;
+                }
+                size = readUnsigned(header, offset + 8, 8);
+            }
+            if (size < 8 || size > header.length - offset) {
+                return false;
+            }
+            offset += (int) size;
+        }
+        return false;
+    }
+
+    private boolean isIsoBmff(byte[] header) {
+        return header.length >= 8 && ISO_BMFF_BOXES.contains(new String(header, 4, 4, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Walks the top-level boxes in the header: every box must have a printable type and a size
+     * that fits the 64-bit box layout, and an ftyp box must be large enough to hold its brand.
+     */
+    private boolean checkIsoBmff(byte[] header) {
+        int offset = 0;
+        while (offset + 8 <= header.length) {
+            long size = readUnsigned(header, offset, 4);
+            String type = new String(header, offset + 4, 4, StandardCharsets.US_ASCII);
+            if (!type.chars().allMatch(c -> c >= 0x20 && c < 0x7F)) {
+                return false;
+            }
+
+            int headerSize = 8;
+            if (size == 1) {
+                if (offset + 16 > header.length) {
+                    return true;
+                }
+                size = readUnsigned(header, offset + 8, 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                return true; // box extends to the end of the file
+            }
+
+            if (size < headerSize || (type.equals("ftyp") && size < 16)) {
+                return false;
+            }
+            if (size > header.length - offset) {
+                return true; // continues past the bytes we have
+            }
+            offset += (int) size;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the EBML header element and requires a Matroska or WebM document type.
+     */
+    private boolean checkEbml(byte[] header) {
+        int offset = 4;
+        long[] size = readVint(header, offset);
+        if (size == null) {
+            return false;
+        }
+        offset += (int) size[1];
+        int end = (int) Math.min(header.length, offset + size[0]);
+
+        while (offset + 2 < end) {
+            long[] id = readVint(header, offset);
+            if (id == null) {
+                return false;
+            }
+            int idLength = (int) id[1];
+            long[] length = readVint(header, offset + idLength);
+            if (length == null) {
+                return false;
+            }
+            int dataStart = offset + idLength + (int) length[1];
+            if (dataStart + length[0] > end) {
+                return false;
+            }
+            if (readUnsigned(header, offset, idLength) == 0x4282) { // DocType
+                String docType = new String(header, dataStart, (int) length[0], StandardCharsets.US_ASCII).trim();
+                return docType.equals("matroska") || docType.equals("webm");
+            }
+            offset = dataStart + (int) length[0];
+        }
+        return false;
+    }
+
+    private boolean checkTransportStream(byte[] header) {
+        for (int offset = 0; offset < Math.min(header.length, 188 * 4); offset += 188) {
+            if (header[offset] != 0x47) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes an EBML variable-length integer.
+     *
+     * @return The value with its length marker removed and the number of bytes it occupies, or null if malformed.
+     */
+    private long[] readVint(byte[] data, int offset) {
+        if (offset >= data.length) {
+            return null;
+        }
+        int first = data[offset] & 0xFF;
+        int length = Integer.numberOfLeadingZeros(first) - 23;
+        if (first == 0 || length > 8 || offset + length > data.length) {
+            return null;
+        }
+        long value = first & (0xFF >> length);
+        for (int i = 1; i < length; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return new long[]{value, length};
+    }
+
+    private long readUnsigned(byte[] data, int offset, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private boolean startsWith(byte[] data, int... prefix) {
+        if (data.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((data[i] & 0xFF) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,47 +1,91 @@
 package com.hapidzfadli.hflix.app.service.impl;
 
+import com.hapidzfadli.hflix.api.dto.EncodingJobDTO;
 import com.hapidzfadli.hflix.app.service.MinioService;
+import com.hapidzfadli.hflix.app.service.SourceCacheService;
 import com.hapidzfadli.hflix.app.service.VideoEncodingService;
+import com.hapidzfadli.hflix.app.service.VideoPackagingService;
+import com.hapidzfadli.hflix.app.service.VideoProbeService;
+import com.hapidzfadli.hflix.app.worker.FfmpegSupervisor;
 import com.hapidzfadli.hflix.config.MinioConfig;
+import com.hapidzfadli.hflix.domain.entity.EncodingChunk;
 import com.hapidzfadli.hflix.domain.entity.Video;
 import com.hapidzfadli.hflix.domain.entity.VideoFormat;
+import com.hapidzfadli.hflix.domain.repository.EncodingChunkRepository;
 import com.hapidzfadli.hflix.domain.repository.VideoFormatRepository;
 import com.hapidzfadli.hflix.domain.repository.VideoRepository;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class VideoEncodingServiceImpl implements VideoEncodingService {
 
+    private static final int MIN_VIDEO_BITRATE = 200;
+    private static final String SOURCE_CHUNK_PATTERN = "chunk_%05d.mkv";
+    private static final int MANIFEST_ATTEMPTS = 3;
+    private static final long MANIFEST_RETRY_DELAY_MS = 1000;
+
     private final VideoRepository videoRepository;
     private final VideoFormatRepository videoFormatRepository;
+    private final EncodingChunkRepository encodingChunkRepository;
     private final MinioService minioService;
     private final MinioConfig minioConfig;
+    private final VideoPackagingService videoPackagingService;
+    private final VideoProbeService videoProbeService;
+    private final SourceCacheService sourceCacheService;
+    private final FfmpegSupervisor ffmpegSupervisor;
     private final KafkaTemplate<String, Object> kafkaTemplate;
-    private final VideoEncodingService self;
+
+    @Lazy
+    @Autowired
+    private VideoEncodingService self;
 
     @Value("${ffmpeg.binary.path}")
     private String ffmpegPath;
 
-    @Value("${ffmpeg.probe.path}")
-    private String ffprobePath;
-
     @Value("${video.encoding.resolutions}")
     private String resolutionsConfig;
 
@@ -54,43 +98,213 @@ public class VideoEncodingServiceImpl implements VideoEncodingService {
     @Value("${kafka.topic.encoding-status}")
     private String encodingStatusTopic;
 
+    @Value("${video.packaging.segment-duration}")
+    private int segmentDuration;
+
+    @Value("${video.encoding.mode}")
+    private String encodingMode;
+
+    @Value("${video.encoding.bitrate-cap-ratio}")
+    private double bitrateCapRatio;
+
+    @Value("${video.encoding.chunk-duration}")
+    private int chunkDuration;
+
+    @Value("${video.encoding.chunk-min-duration}")
+    private int chunkMinDuration;
+
+    @Value("${video.encoding.audio-bitrate}")
+    private int audioBitrate;
+
+    @Value("${video.encoding.prefix-resolutions}")
+    private String prefixResolutionsConfig;
+
+    @Value("${video.encoding.supervisor.stall-timeout-seconds}")
+    private long stallTimeoutSeconds;
+
     @Override
     @Transactional
     public void startEncodingJob(Video video){
         log.info("Starting encoding job for video ID: {}", video.getId());
 
-        String[] resolutions = resolutionsConfig.split(",");
-        String[] codecs = codecsConfig.split(",");
+        List<VideoFormat> formats = videoFormatRepository.findByVideo(video);
+        if (formats.isEmpty()) {
+            formats = createFormats(video);
+        } else {
+            log.info("Reusing {} formats created on the upload prefix of video ID: {}", formats.size(), video.getId());
+        }
+
+        // Probed sources without an audio stream have no audio formats; unprobed ones are assumed to have audio
+        List<String> audioCodecs = formats.stream()
+                .filter(this::isAudioFormat)
+                .map(VideoFormat::getCodec)
+                .collect(Collectors.toList());
+        if (!audioCodecs.isEmpty()) {
+            // The audio is encoded once per audio codec alongside the video renditions, which then reuse it
+            publishEncodingJob(EncodingJobDTO.builder()
+                    .videoId(video.getId())
+                    .duration(video.getDuration())
+                    .mode(EncodingJobDTO.Mode.AUDIO)
+                    .build());
+
+            log.info("Audio encoding job submitted for video ID: {}, codecs: {}", video.getId(), audioCodecs);
+        }
+
+        publishVideoJobs(video, formats.stream()
+                .filter(format -> !isAudioFormat(format))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Starts the lowest renditions on the leading part of an upload that is still arriving.
+     * Only chunked encoding can build on a prefix: the prefix is split exactly as the whole
+     * file will be, every chunk it fully contains is encoded now, and the split job of the
+     * complete file later adds the remaining chunks to the same renditions. The last chunk
+     * of the prefix may be cut short, so it is left to that split job.
+     *
+     * @param video A probed video whose upload is still in progress.
+     * @param input An ffmpeg input that reads the prefix.
+     */
+    @Override
+    public void startPrefixEncoding(Video video, String input) {
+        if (!isChunked(video) || !videoFormatRepository.findByVideo(video).isEmpty()) {
+            return;
+        }
+
+        Set<String> prefixResolutions = Stream.of(prefixResolutionsConfig.split(","))
+                .map(String::trim)
+                .collect(Collectors.toSet());
+        Path workDir = null;
+        try {
+            workDir = Files.createTempDirectory("prefix_" + video.getId() + "_");
+
+            // The input ends mid-file, so ffmpeg may report an error; every segment but the last is still complete
+            if (!ffmpegSupervisor.run(getSplitCommand(input, workDir), "video " + video.getId() + "/prefix split", 0, null)) {
+                log.debug("Prefix split of video ID: {} ended with an error", video.getId());
+            }
+
+            List<Path> chunks;
+            try (Stream<Path> files = Files.list(workDir)) {
+                chunks = files.sorted().collect(Collectors.toList());
+            }
+            int chunkCount = chunks.size() - 1;
+            if (chunkCount < 1) {
+                log.info("Prefix of video ID: {} holds no complete chunk", video.getId());
+                return;
+            }
+            for (int i = 0; i < chunkCount; i++) {
+                minioService.uploadFile(minioConfig.getBucketName(), getSourceChunkKey(video, i), chunks.get(i).toFile());
+            }
+
+            for (VideoFormat format : createFormats(video)) {
+                if (isAudioFormat(format) || !prefixResolutions.contains(format.getResolution())) {
+                    continue;
+                }
+                format.setStatus(VideoFormat.Status.PREENCODING);
+                videoFormatRepository.save(format);
 
-        for (String resolution : resolutions) {
-            for (String codec : codecs) {
-                VideoFormat format = new VideoFormat();
-                format.setVideo(video);
-                format.setResolution(resolution.trim());
-                format.setCodec(codec.trim());
-                format.setBitrate(getBitrateForResolution(resolution.trim()));
-                format.setStatus(VideoFormat.Status.PROCESSING);
-                format.setS3Path("");
-                format.setFileSize("0");
+                List<EncodingChunk> prefixChunks = new ArrayList<>();
+                for (int i = 0; i < chunkCount; i++) {
+                    EncodingChunk chunk = new EncodingChunk();
+                    chunk.setVideoFormat(format);
+                    chunk.setChunkIndex(i);
+                    chunk.setStatus(EncodingChunk.Status.PENDING);
+                    prefixChunks.add(chunk);
+                }
+                encodingChunkRepository.saveAll(prefixChunks);
+
+                for (int i = 0; i < chunkCount; i++) {
+                    publishEncodingJob(EncodingJobDTO.builder()
+                            .videoId(video.getId())
+                            .formatId(format.getId())
+                            .resolution(format.getResolution())
+                            .codec(format.getCodec())
+                            .chunkIndex(i)
+                            .duration(chunkDuration)
+                            .mode(EncodingJobDTO.Mode.CHUNK)
+                            .build());
+                }
+            }
 
-                format = videoFormatRepository.save(format);
+            log.info("Started {} prefix chunks of video ID: {} at resolutions {}", chunkCount, video.getId(), prefixResolutions);
 
-                Map<String, Object> encodingJob = new HashMap<>();
-                encodingJob.put("videoId", video.getId());
-                encodingJob.put("resolution", resolution.trim());
-                encodingJob.put("codec", codec.trim());
-                encodingJob.put("formatId", format.getId());
+        } catch (Exception e) {
+            log.error("Error starting prefix encoding for video ID: {}", video.getId(), e);
+        } finally {
+            deleteDirectoryQuietly(workDir);
+        }
+    }
 
-                kafkaTemplate.send(encodingQueueTopic, video.getId().toString(), encodingJob);
+    /**
+     * Returns a fingerprint of every setting that affects the encoded output. Two uploads of
+     * the same content only share renditions if they were encoded with the same profile.
+     */
+    @Override
+    public String getEncodingProfile() {
+        String settings = String.join("|",
+                resolutionsConfig.replace(" ", ""),
+                codecsConfig.replace(" ", ""),
+                String.valueOf(bitrateCapRatio),
+                String.valueOf(audioBitrate),
+                String.valueOf(segmentDuration));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(settings.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
 
-                log.info("Encoding job submitted for video ID: {}, resolution: {}, codec: {}", video.getId(), resolution, codec);
+    @Override
+    @Transactional
+    public void reuseEncodedFormats(Video video, Video source) {
+        // Renditions started on the upload's prefix are superseded by the shared ones, and so is the prefix's split
+        Set<Integer> sourceChunks = new HashSet<>();
+        for (VideoFormat format : videoFormatRepository.findByVideo(video)) {
+            List<EncodingChunk> chunks = encodingChunkRepository.findByVideoFormatOrderByChunkIndex(format);
+            chunks.stream().map(EncodingChunk::getS3Path).filter(Objects::nonNull).forEach(this::deleteObjectQuietly);
+            for (EncodingChunk chunk : chunks) {
+                if (sourceChunks.add(chunk.getChunkIndex())) {
+                    deleteObjectQuietly(getSourceChunkKey(video, chunk.getChunkIndex()));
+                }
             }
+            encodingChunkRepository.deleteAll(chunks);
+            videoFormatRepository.delete(format);
+        }
+
+        // The new formats reference the same objects; encoded objects are never rewritten in place
+        for (VideoFormat sourceFormat : videoFormatRepository.findByVideoAndStatus(source, VideoFormat.Status.READY)) {
+            VideoFormat format = new VideoFormat();
+            format.setVideo(video);
+            format.setResolution(sourceFormat.getResolution());
+            format.setCodec(sourceFormat.getCodec());
+            format.setBitrate(sourceFormat.getBitrate());
+            format.setS3Path(sourceFormat.getS3Path());
+            format.setFileSize(sourceFormat.getFileSize());
+            format.setPackagePath(sourceFormat.getPackagePath());
+            format.setStatus(VideoFormat.Status.READY);
+            videoFormatRepository.save(format);
         }
+
+        video.setDuration(source.getDuration());
+        video.setSourceWidth(source.getSourceWidth());
+        video.setSourceHeight(source.getSourceHeight());
+        video.setSourceFrameRate(source.getSourceFrameRate());
+        video.setSourceBitrate(source.getSourceBitrate());
+        video.setSourceVideoCodec(source.getSourceVideoCodec());
+        video.setHasAudio(source.getHasAudio());
+        video.setThumbnailPath(source.getThumbnailPath());
+        video.setManifestPath(source.getManifestPath());
+        video.setStatus(Video.Status.READY);
+        videoRepository.save(video);
+
+        log.info("Reused encoded formats of video ID: {} for duplicate upload video ID: {}", source.getId(), video.getId());
     }
 
     @Override
-    @Async
-    public void processEncodingJob(Long videoId, String resolution, String codec)  {
+    public void processEncodingJob(Long videoId, String resolution, String codec, int threads) {
+        SourceCacheService.Lease source = null;
+        File tempEncoded = null;
         try {
             Video video = videoRepository.findById(videoId)
                     .orElseThrow(() -> new EntityNotFoundException("Video not found with ID: " + videoId));
@@ -99,93 +313,677 @@ public class VideoEncodingServiceImpl implements VideoEncodingService {
                     video, resolution, codec)
                     .orElseThrow(() -> new EntityNotFoundException("Video format not found for video ID: " + videoId));
 
-            File tempOriginal = File.createTempFile("original_", ".mp4");
-            try (InputStream is = minioService.getObject(minioConfig.getBucketName(), video.getS3Path());
-                 FileOutputStream fos = new FileOutputStream(tempOriginal)) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = is.read(buffer)) != -1) {
-                    fos.write(buffer, 0, bytesRead);
-                }
+            if (format.getStatus() == VideoFormat.Status.READY || format.getStatus() == VideoFormat.Status.AWAITING_AUDIO) {
+                log.info("Skipping redelivered encoding job for video ID: {}, resolution: {}, codec: {}",
+                        videoId, resolution, codec);
+                return;
             }
 
-            File tempEncoded = File.createTempFile("encoded_", getFileExtension(codec));
+            source = sourceCacheService.acquire(video);
+            tempEncoded = File.createTempFile("encoded_", getFileExtension(codec));
 
-            ProcessBuilder pb = new ProcessBuilder();
-            pb.command(
+            List<String> command = new ArrayList<>(List.of(
                     ffmpegPath,
-                    "-i", tempOriginal.getAbsolutePath(),
-                    "-c:v", getFFmpegCodec(codec),
-                    "-b:v", format.getBitrate() + "k",
-                    "-preset", "medium",
-                    "-c:a", "aac",
-                    "-b:a", "128k",
-                    "-movflags", "+faststart",
-                    getResolutionParams(resolution),
-                    tempEncoded.getAbsolutePath()
-            );
+                    "-y",
+                    "-threads", String.valueOf(threads),
+                    "-i", source.getFile().getAbsolutePath(),
+                    "-vf", getScaleFilter(resolution)
+            ));
+            command.addAll(getRenditionOutputParams(format, threads));
+            command.add(tempEncoded.getAbsolutePath());
+
+            if (!ffmpegSupervisor.run(command, "video " + videoId + "/" + resolution + "/" + codec, getDuration(video),
+                    (percent, speed) -> publishProgress(videoId, resolution, codec, percent, speed))) {
+                self.updateEncodingStatus(videoId, resolution, codec, VideoFormat.Status.ERROR, 0);
+                return;
+            }
+
+            completeRendition(video, format, tempEncoded);
+
+            log.info("Completed encoding job for video ID: {}, resolution: {}, codec: {}",
+                    videoId, resolution, codec);
+
+        } catch (Exception e) {
+            log.error("Error processing encoding job for video ID: {}, resolution: {}",
+                    videoId, resolution, e);
+
+            self.updateEncodingStatus(videoId, resolution, codec, VideoFormat.Status.ERROR, 0);
+        } finally {
+            closeQuietly(source);
+            deleteQuietly(tempEncoded);
+        }
+    }
+
+    @Override
+    public void processLadderEncodingJob(Long videoId, String codec, int threads) {
+        SourceCacheService.Lease source = null;
+        List<File> outputs = new ArrayList<>();
+        List<VideoFormat> formats = new ArrayList<>();
+        try {
+            Video video = videoRepository.findById(videoId)
+                    .orElseThrow(() -> new EntityNotFoundException("Video not found with ID: " + videoId));
+
+            formats = videoFormatRepository.findByVideoAndCodec(video, codec).stream()
+                    .filter(format -> format.getStatus() == VideoFormat.Status.PROCESSING)
+                    .sorted((f1, f2) -> Integer.compare(f1.getBitrate(), f2.getBitrate()))
+                    .collect(Collectors.toList());
+
+            if (formats.isEmpty()) {
+                log.warn("No pending formats for ladder job, video ID: {}, codec: {}", videoId, codec);
+                return;
+            }
+
+            source = sourceCacheService.acquire(video);
+
+            // Decode once, split the decoded frames and scale each branch to its rung
+            StringBuilder filter = new StringBuilder("[0:v]split=").append(formats.size());
+            for (int i = 0; i < formats.size(); i++) {
+                filter.append("[s").append(i).append("]");
+            }
+            for (int i = 0; i < formats.size(); i++) {
+                filter.append(";[s").append(i).append("]")
+                        .append(getScaleFilter(formats.get(i).getResolution()))
+                        .append("[v").append(i).append("]");
+            }
+
+            List<String> command = new ArrayList<>(List.of(
+                    ffmpegPath,
+                    "-y",
+                    "-threads", String.valueOf(threads),
+                    "-i", source.getFile().getAbsolutePath(),
+                    "-filter_complex", filter.toString(),
+                    "-filter_complex_threads", String.valueOf(threads)
+            ));
+
+            // The encoders of one ladder share the job's thread budget
+            int encoderThreads = Math.max(1, threads / formats.size());
+
+            for (int i = 0; i < formats.size(); i++) {
+                File output = File.createTempFile("encoded_", getFileExtension(codec));
+                outputs.add(output);
+
+                command.addAll(List.of("-map", "[v" + i + "]"));
+                command.addAll(getRenditionOutputParams(formats.get(i), encoderThreads));
+                command.add(output.getAbsolutePath());
+            }
+
+            List<VideoFormat> ladderFormats = formats;
+            if (!ffmpegSupervisor.run(command, "video " + videoId + "/ladder/" + codec, getDuration(video),
+                    (percent, speed) -> ladderFormats.forEach(format ->
+                            publishProgress(videoId, format.getResolution(), codec, percent, speed)))) {
+                for (VideoFormat format : formats) {
+                    self.updateEncodingStatus(videoId, format.getResolution(), codec, VideoFormat.Status.ERROR, 0);
+                }
+                return;
+            }
+
+            for (int i = 0; i < formats.size(); i++) {
+                completeRendition(video, formats.get(i), outputs.get(i));
+            }
+
+            log.info("Completed ladder encoding job for video ID: {}, codec: {}, renditions: {}",
+                    videoId, codec, formats.size());
+
+        } catch (Exception e) {
+            log.error("Error processing ladder encoding job for video ID: {}, codec: {}", videoId, codec, e);
+
+            for (VideoFormat format : formats) {
+                if (format.getStatus() == VideoFormat.Status.PROCESSING) {
+                    self.updateEncodingStatus(videoId, format.getResolution(), codec, VideoFormat.Status.ERROR, 0);
+                }
+            }
+        } finally {
+            closeQuietly(source);
+            outputs.forEach(this::deleteQuietly);
+        }
+    }
+
+    @Override
+    public void processAudioJob(Long videoId, int threads) {
+        SourceCacheService.Lease source = null;
+        List<File> outputs = new ArrayList<>();
+        Video video = videoRepository.findById(videoId)
+                .orElseThrow(() -> new EntityNotFoundException("Video not found with ID: " + videoId));
+
+        List<VideoFormat> audioFormats = videoFormatRepository.findByVideo(video).stream()
+                .filter(this::isAudioFormat)
+                .filter(format -> format.getStatus() == VideoFormat.Status.PROCESSING)
+                .collect(Collectors.toList());
+        try {
+            if (!audioFormats.isEmpty()) {
+                source = sourceCacheService.acquire(video);
+
+                // Sources that could not be probed on upload were assumed to have audio; only a probe can skip it
+                if (video.getHasAudio() == null
+                        && videoProbeService.probeSource(video, source.getFile().getAbsolutePath())
+                        && Boolean.FALSE.equals(video.getHasAudio())) {
+                    log.info("Video ID: {} has no audio stream, dropping its audio renditions", videoId);
+                    videoFormatRepository.deleteAll(audioFormats);
+                    audioFormats.clear();
+                    for (VideoFormat waiting : videoFormatRepository.findByVideoAndStatus(video, VideoFormat.Status.AWAITING_AUDIO)) {
+                        releaseWithoutAudio(video, waiting);
+                    }
+                    finalizeIfAllReady(video);
+                }
+            }
+
+            if (!audioFormats.isEmpty()) {
+                // One decode of the audio track feeds every audio codec
+                List<String> command = new ArrayList<>(List.of(
+                        ffmpegPath,
+                        "-y",
+                        "-threads", String.valueOf(threads),
+                        "-i", source.getFile().getAbsolutePath()
+                ));
+
+                for (VideoFormat format : audioFormats) {
+                    File output = File.createTempFile("audio_", getFileExtension(format.getCodec()));
+                    outputs.add(output);
 
-            pb.redirectErrorStream(true);
+                    command.addAll(List.of(
+                            "-map", "0:a:0",
+                            "-c:a", getFFmpegCodec(format.getCodec()),
+                            "-b:a", format.getBitrate() + "k"
+                    ));
+                    command.addAll(getContainerParams(format.getCodec()));
+                    command.add(output.getAbsolutePath());
+                }
+
+                if (!ffmpegSupervisor.run(command, "video " + videoId + "/audio", getDuration(video),
+                        (percent, speed) -> audioFormats.forEach(format ->
+                                publishProgress(videoId, format.getResolution(), format.getCodec(), percent, speed)))) {
+                    throw new IllegalStateException("Audio encoding failed for video ID: " + videoId);
+                }
+
+                for (int i = 0; i < audioFormats.size(); i++) {
+                    completeRendition(video, audioFormats.get(i), outputs.get(i));
+                }
+
+                log.info("Completed audio encoding job for video ID: {}, codecs: {}", videoId,
+                        audioFormats.stream().map(VideoFormat::getCodec).collect(Collectors.toList()));
+            }
 
-            Process process = pb.start();
+        } catch (Exception e) {
+            log.error("Error processing audio encoding job for video ID: {}", videoId, e);
 
-            boolean completed = process.waitFor(6, TimeUnit.HOURS);
+            // Video renditions are encoded without audio, so the video must not become READY without it
+            for (VideoFormat format : audioFormats) {
+                if (format.getStatus() != VideoFormat.Status.READY) {
+                    self.updateEncodingStatus(videoId, format.getResolution(), format.getCodec(), VideoFormat.Status.ERROR, 0);
+                }
+            }
+        } finally {
+            closeQuietly(source);
+            outputs.forEach(this::deleteQuietly);
+        }
+    }
+
+    @Override
+    public void processSplitJob(Long videoId) {
+        SourceCacheService.Lease source = null;
+        Path workDir = null;
+        List<VideoFormat> formats = new ArrayList<>();
+        try {
+            Video video = videoRepository.findById(videoId)
+                    .orElseThrow(() -> new EntityNotFoundException("Video not found with ID: " + videoId));
 
-            if(!completed) {
-                process.destroy();
-                self.updateEncodingStatus(videoId, resolution, VideoFormat.Status.ERROR, 0);
-                log.error("Encoding job for video ID: {}, resolution: {} timed out", videoId, resolution);
+            formats = videoFormatRepository.findByVideo(video).stream()
+                    .filter(format -> !isAudioFormat(format))
+                    .filter(format -> format.getStatus() == VideoFormat.Status.PROCESSING
+                            || format.getStatus() == VideoFormat.Status.PREENCODING)
+                    .collect(Collectors.toList());
+            if (formats.isEmpty()) {
+                log.warn("No pending formats for split job, video ID: {}", videoId);
                 return;
             }
 
-            if(process.exitValue() != 0) {
-                self.updateEncodingStatus(videoId, resolution, VideoFormat.Status.ERROR, 0);
-                log.error("Error processing encoding job for video ID: {}, resolution: {}", videoId, resolution);
+            // A redelivered split job only republishes the chunks that are still pending. Renditions started
+            // on the upload's prefix hold only the prefix's chunks until the complete file has been split.
+            Map<Long, List<EncodingChunk>> existing = new HashMap<>();
+            int chunkCount = 0;
+            int prefixChunkCount = 0;
+            for (VideoFormat format : formats) {
+                List<EncodingChunk> chunks = encodingChunkRepository.findByVideoFormatOrderByChunkIndex(format);
+                existing.put(format.getId(), chunks);
+                if (format.getStatus() == VideoFormat.Status.PREENCODING) {
+                    prefixChunkCount = Math.max(prefixChunkCount, chunks.size());
+                } else {
+                    chunkCount = Math.max(chunkCount, chunks.size());
+                }
+            }
+
+            Set<Integer> changedChunks = new HashSet<>();
+            if (chunkCount == 0) {
+                source = sourceCacheService.acquire(video);
+                workDir = Files.createTempDirectory("split_" + videoId + "_");
+
+                if (!ffmpegSupervisor.run(getSplitCommand(source.getFile().getAbsolutePath(), workDir),
+                        "video " + videoId + "/split", getDuration(video), null)) {
+                    throw new IllegalStateException("Splitting failed for video ID: " + videoId);
+                }
+
+                List<Path> chunks;
+                try (Stream<Path> files = Files.list(workDir)) {
+                    chunks = files.sorted().collect(Collectors.toList());
+                }
+                if (chunks.size() < prefixChunkCount) {
+                    throw new IllegalStateException("Video ID: " + videoId + " split into fewer chunks than its prefix");
+                }
+                for (int i = 0; i < chunks.size(); i++) {
+                    String key = getSourceChunkKey(video, i);
+                    if (i < prefixChunkCount) {
+                        if (matchesObject(key, chunks.get(i).toFile())) {
+                            continue;
+                        }
+                        log.warn("Chunk {} of video ID: {} differs from its prefix chunk, encoding it again", i, videoId);
+                        changedChunks.add(i);
+                    }
+                    minioService.uploadFile(minioConfig.getBucketName(), key, chunks.get(i).toFile());
+                }
+                chunkCount = chunks.size();
+
+                log.info("Split video ID: {} into {} chunks, {} of them from its prefix", videoId, chunkCount,
+                        prefixChunkCount - changedChunks.size());
+            }
+
+            for (VideoFormat format : formats) {
+                List<EncodingChunk> chunks = existing.get(format.getId());
+                int formatPrefixCount = format.getStatus() == VideoFormat.Status.PREENCODING ? chunks.size() : 0;
+                Set<Integer> republish = new HashSet<>();
+
+                // Reset before the format can be stitched; an encode of the prefix's version still in flight is discarded
+                for (EncodingChunk chunk : chunks) {
+                    if (changedChunks.contains(chunk.getChunkIndex())
+                            && resetChunk(chunk.getId(), EnumSet.of(EncodingChunk.Status.ENCODING, EncodingChunk.Status.READY))) {
+                        republish.add(chunk.getChunkIndex());
+                    }
+                }
+
+                List<EncodingChunk> added = new ArrayList<>();
+                for (int i = chunks.size(); i < chunkCount; i++) {
+                    EncodingChunk chunk = new EncodingChunk();
+                    chunk.setVideoFormat(format);
+                    chunk.setChunkIndex(i);
+                    chunk.setStatus(EncodingChunk.Status.PENDING);
+                    added.add(chunk);
+                }
+                encodingChunkRepository.saveAll(added);
+
+                // Every chunk row now exists, so the rendition is stitched once they are all READY
+                if (format.getStatus() == VideoFormat.Status.PREENCODING) {
+                    format.setStatus(VideoFormat.Status.PROCESSING);
+                    videoFormatRepository.save(format);
+                }
+
+                // Prefix chunks still pending have their jobs from the prefix stage queued or running. Read after
+                // the format left PREENCODING: a prefix chunk failing from now on fails the rendition instead.
+                for (EncodingChunk chunk : encodingChunkRepository.findByVideoFormatOrderByChunkIndex(format)) {
+                    if (chunk.getChunkIndex() >= formatPrefixCount) {
+                        if (chunk.getStatus() == EncodingChunk.Status.PENDING) {
+                            republish.add(chunk.getChunkIndex());
+                        }
+                    } else if (chunk.getStatus() == EncodingChunk.Status.ERROR
+                            && resetChunk(chunk.getId(), EnumSet.of(EncodingChunk.Status.ERROR))) {
+                        republish.add(chunk.getChunkIndex());
+                    }
+                }
+
+                for (int chunkIndex : new TreeSet<>(republish)) {
+                    publishEncodingJob(EncodingJobDTO.builder()
+                            .videoId(videoId)
+                            .formatId(format.getId())
+                            .resolution(format.getResolution())
+                            .codec(format.getCodec())
+                            .chunkIndex(chunkIndex)
+                            .duration(chunkDuration)
+                            .mode(EncodingJobDTO.Mode.CHUNK)
+                            .build());
+                }
+            }
+
+            log.info("Chunk jobs submitted for video ID: {}, {} chunks x {} formats", videoId, chunkCount, formats.size());
+
+        } catch (Exception e) {
+            log.error("Error processing split job for video ID: {}", videoId, e);
+
+            for (VideoFormat format : formats) {
+                self.updateEncodingStatus(videoId, format.getResolution(), format.getCodec(), VideoFormat.Status.ERROR, 0);
+            }
+            deleteSourceChunksIfSettled(videoId);
+        } finally {
+            closeQuietly(source);
+            deleteDirectoryQuietly(workDir);
+        }
+    }
+
+    @Override
+    public void processChunkEncodingJob(Long videoId, Long formatId, int chunkIndex, int threads) {
+        File tempSource = null;
+        File tempEncoded = null;
+        VideoFormat format = null;
+        Long chunkId = null;
+        int attempt = -1;
+        try {
+            Video video = videoRepository.findById(videoId)
+                    .orElseThrow(() -> new EntityNotFoundException("Video not found with ID: " + videoId));
+
+            format = videoFormatRepository.findById(formatId)
+                    .orElseThrow(() -> new EntityNotFoundException("Video format not found with ID: " + formatId));
+
+            EncodingChunk chunk = encodingChunkRepository.findByVideoFormatAndChunkIndex(format, chunkIndex)
+                    .orElseThrow(() -> new EntityNotFoundException("Chunk " + chunkIndex + " not found for format ID: " + formatId));
+            chunkId = chunk.getId();
+
+            boolean pending = format.getStatus() == VideoFormat.Status.PROCESSING
+                    || format.getStatus() == VideoFormat.Status.PREENCODING;
+            if (pending) {
+                attempt = claimChunk(chunkId);
+            }
+            if (attempt < 0) {
+                log.info("Skipping chunk {} of format ID: {}, chunk is {} and format is {}",
+                        chunkIndex, formatId, chunk.getStatus(), format.getStatus());
                 return;
             }
 
-            String s3Key = minioConfig.getEncodedPath() + "/" + video.getUser().getId() + "/" + UUID.randomUUID() + '/' +
-                    getBaseFilename(video.getOriginalFilename()) + "_" + resolution + getFileExtension(codec);
+            tempSource = File.createTempFile("chunk_", ".mkv");
+            try (InputStream is = minioService.getObject(minioConfig.getBucketName(), getSourceChunkKey(video, chunkIndex))) {
+                Files.copy(is, tempSource.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            tempEncoded = File.createTempFile("encoded_chunk_", getFileExtension(format.getCodec()));
+
+            List<String> command = new ArrayList<>(List.of(
+                    ffmpegPath,
+                    "-y",
+                    "-threads", String.valueOf(threads),
+                    "-i", tempSource.getAbsolutePath(),
+                    "-vf", getScaleFilter(format.getResolution())
+            ));
+            command.addAll(getRenditionOutputParams(format, threads));
+            command.add(tempEncoded.getAbsolutePath());
 
+            // Progress reports double as the heartbeat that keeps the claim from going stale
+            Long claimedChunkId = chunkId;
+            int claimedAttempt = attempt;
+            String label = format.getResolution() + "/chunk " + chunkIndex;
+            if (!ffmpegSupervisor.run(command, "video " + videoId + "/" + label, chunkDuration,
+                    (percent, speed) -> encodingChunkRepository.renewChunkClaim(claimedChunkId, claimedAttempt,
+                            LocalDateTime.now()))) {
+                throw new IllegalStateException("Encoding failed for video ID: " + videoId + ", " + label);
+            }
+
+            // Every attempt writes its own object, so a discarded attempt never deletes the output of its successor
+            String s3Key = getChunkPrefix(video) + "/" + formatId + "/"
+                    + String.format(Locale.ROOT, "chunk_%05d_%d", chunkIndex, attempt) + getFileExtension(format.getCodec());
             minioService.uploadFile(minioConfig.getBucketName(), s3Key, tempEncoded);
 
-            format.setS3Path(s3Key);
-            format.setFileSize(String.valueOf(tempEncoded.length()));
-            format.setStatus(VideoFormat.Status.READY);
-            videoFormatRepository.save(format);
+            if (encodingChunkRepository.completeChunk(chunkId, attempt, EncodingChunk.Status.ENCODING,
+                    EncodingChunk.Status.READY, s3Key) == 0) {
+                // The split job reset the chunk because the complete upload differs from its prefix here
+                log.warn("Discarding chunk {} of format ID: {}, attempt {} was superseded while encoding",
+                        chunkIndex, formatId, attempt);
+                deleteObjectQuietly(s3Key);
+                return;
+            }
+
+            // A chunked rendition reports progress as the share of its chunks that are done
+            long readyChunks = encodingChunkRepository.countByVideoFormatAndStatus(format, EncodingChunk.Status.READY);
+            long totalChunks = encodingChunkRepository.countByVideoFormat(format);
+            publishProgress(videoId, format.getResolution(), format.getCodec(),
+                    (int) Math.min(99, readyChunks * 100 / Math.max(1, totalChunks)), 0);
+
+            // Chunks finish concurrently on different workers; exactly one of them sees the last READY chunk
+            int updated = videoFormatRepository.updateStatusIfAllChunksInStatus(
+                    formatId, VideoFormat.Status.PROCESSING, VideoFormat.Status.STITCHING, EncodingChunk.Status.READY);
+
+            if (updated == 1) {
+                publishEncodingJob(EncodingJobDTO.builder()
+                        .videoId(videoId)
+                        .formatId(formatId)
+                        .resolution(format.getResolution())
+                        .codec(format.getCodec())
+                        .duration(video.getDuration())
+                        .mode(EncodingJobDTO.Mode.STITCH)
+                        .build());
+
+                log.info("All chunks encoded for video ID: {}, resolution: {}, codec: {}; stitch submitted",
+                        videoId, format.getResolution(), format.getCodec());
+            }
+
+        } catch (Exception e) {
+            log.error("Error processing chunk {} of format ID: {} for video ID: {}", chunkIndex, formatId, videoId, e);
+            failChunk(videoId, formatId, chunkIndex, chunkId, attempt, format);
+        } finally {
+            deleteQuietly(tempSource);
+            deleteQuietly(tempEncoded);
+        }
+    }
+
+    /**
+     * Claims a chunk for this worker. A chunk another worker is still encoding is skipped rather than
+     * waited for; should that worker die, its claim goes stale and {@link #republishStaleChunks()}
+     * publishes the chunk again.
+     *
+     * @return The attempt this worker owns, or -1 if the chunk needs no encoding or is encoded elsewhere.
+     */
+    private int claimChunk(Long chunkId) {
+        while (true) {
+            EncodingChunk chunk = encodingChunkRepository.findById(chunkId)
+                    .orElseThrow(() -> new EntityNotFoundException("Chunk not found with ID: " + chunkId));
+            if (chunk.getStatus() != EncodingChunk.Status.PENDING && chunk.getStatus() != EncodingChunk.Status.ENCODING) {
+                return -1;
+            }
 
-            if(video.getStatus() == Video.Status.PROCESSING) {
-                long completedFormats = videoFormatRepository.countByVideoAndStatus(video, VideoFormat.Status.READY);
-                long totalFormats = videoFormatRepository.countByVideo(video);
+            LocalDateTime now = LocalDateTime.now();
+            if (encodingChunkRepository.claimChunk(chunkId, chunk.getAttempt(), EncodingChunk.Status.PENDING,
+                    EncodingChunk.Status.ENCODING, now.minus(getChunkStaleMillis(), ChronoUnit.MILLIS), now) == 1) {
+                return chunk.getAttempt() + 1;
+            }
+            if (chunk.getStatus() == EncodingChunk.Status.ENCODING) {
+                return -1;
+            }
+            // A PENDING chunk that could not be claimed changed meanwhile; read it again
+        }
+    }
+
+    /**
+     * Publishes again the chunks whose encoder stopped renewing its claim, e.g. because its worker died.
+     * Jobs for a chunk that is being encoded are skipped, so this is how such a chunk gets encoded again.
+     * Every node sweeps; releasing the chunk is conditional, so only one of them publishes it.
+     */
+    @Scheduled(fixedDelayString = "${video.encoding.chunk-recovery-interval-ms:60000}")
+    public void republishStaleChunks() {
+        LocalDateTime staleBefore = LocalDateTime.now().minus(getChunkStaleMillis(), ChronoUnit.MILLIS);
+        List<EncodingChunk> stale = encodingChunkRepository.findStaleClaims(EncodingChunk.Status.ENCODING,
+                staleBefore, EnumSet.of(VideoFormat.Status.PROCESSING, VideoFormat.Status.PREENCODING));
+
+        for (EncodingChunk chunk : stale) {
+            if (encodingChunkRepository.releaseStaleChunk(chunk.getId(), chunk.getAttempt(),
+                    EncodingChunk.Status.ENCODING, EncodingChunk.Status.PENDING, staleBefore) == 0) {
+                continue;
+            }
 
-                if(completedFormats == totalFormats) {
-                    video.setStatus(Video.Status.READY);
-                    videoRepository.save(video);
+            VideoFormat format = chunk.getVideoFormat();
+            log.warn("Claim of chunk {} of format ID: {} went stale at attempt {}, publishing it again",
+                    chunk.getChunkIndex(), format.getId(), chunk.getAttempt());
+            publishEncodingJob(EncodingJobDTO.builder()
+                    .videoId(format.getVideo().getId())
+                    .formatId(format.getId())
+                    .resolution(format.getResolution())
+                    .codec(format.getCodec())
+                    .chunkIndex(chunk.getChunkIndex())
+                    .duration(chunkDuration)
+                    .mode(EncodingJobDTO.Mode.CHUNK)
+                    .build());
+        }
+    }
+
+    /**
+     * A claim is abandoned once its encoder has gone twice the stall timeout without reporting progress.
+     */
+    private long getChunkStaleMillis() {
+        return TimeUnit.SECONDS.toMillis(stallTimeoutSeconds) * 2;
+    }
+
+    /**
+     * Records a failed chunk attempt. A prefix chunk failing while its rendition still waits for the
+     * complete upload is left to the split job, which publishes it again; any other failure fails
+     * the rendition.
+     */
+    private void failChunk(Long videoId, Long formatId, int chunkIndex, Long chunkId, int attempt, VideoFormat format) {
+        if (format == null) {
+            return;
+        }
+        if (attempt >= 0 && encodingChunkRepository.completeChunk(chunkId, attempt, EncodingChunk.Status.ENCODING,
+                EncodingChunk.Status.ERROR, null) == 0) {
+            log.info("Chunk {} of format ID: {} was reset while encoding, ignoring the failed attempt {}",
+                    chunkIndex, formatId, attempt);
+            return;
+        }
+
+        // Read after the chunk is marked, so the split job either sees the failed chunk or the failed rendition
+        VideoFormat current = videoFormatRepository.findById(formatId).orElse(format);
+        if (attempt >= 0 && current.getStatus() == VideoFormat.Status.PREENCODING) {
+            log.warn("Prefix chunk {} of format ID: {} failed, left for the split job", chunkIndex, formatId);
+        } else {
+            self.updateEncodingStatus(videoId, format.getResolution(), format.getCodec(), VideoFormat.Status.ERROR, 0);
+            deleteSourceChunksIfSettled(videoId);
+        }
+    }
+
+    /**
+     * Deletes the source chunks of a chunked video once no rendition can need them any more, i.e.
+     * none is still waiting for, encoding or stitching its chunks. Checked after every stitch and
+     * every failed chunked rendition, so a failure does not leave the source chunks behind.
+     */
+    private void deleteSourceChunksIfSettled(Long videoId) {
+        try {
+            Video video = videoRepository.findById(videoId).orElse(null);
+            if (video == null) {
+                return;
+            }
+
+            long chunkCount = 0;
+            for (VideoFormat format : videoFormatRepository.findByVideo(video)) {
+                if (isAudioFormat(format)) {
+                    continue;
+                }
+                if (format.getStatus() == VideoFormat.Status.PREENCODING
+                        || format.getStatus() == VideoFormat.Status.PROCESSING
+                        || format.getStatus() == VideoFormat.Status.STITCHING) {
+                    return;
                 }
+                chunkCount = Math.max(chunkCount, encodingChunkRepository.countByVideoFormat(format));
             }
 
-            tempOriginal.delete();
-            tempEncoded.delete();
+            for (int i = 0; i < chunkCount; i++) {
+                deleteObjectQuietly(getSourceChunkKey(video, i));
+            }
+        } catch (Exception e) {
+            log.warn("Could not clean up source chunks of video ID: {}", videoId, e);
+        }
+    }
 
-            log.info("Completed encoding job for video ID: {}, resolution: {}, codec: {}",
-                    videoId, resolution, codec);
+    /**
+     * Sends a chunk back to PENDING if it is in one of the given statuses, deleting its encoded object.
+     *
+     * @return true if the chunk was reset.
+     */
+    private boolean resetChunk(Long chunkId, Set<EncodingChunk.Status> from) {
+        while (true) {
+            EncodingChunk chunk = encodingChunkRepository.findById(chunkId)
+                    .orElseThrow(() -> new EntityNotFoundException("Chunk not found with ID: " + chunkId));
+            if (!from.contains(chunk.getStatus())) {
+                return false;
+            }
+            // Fenced on the state just read; a worker finishing meanwhile makes it retry with the new state
+            if (encodingChunkRepository.resetChunk(chunkId, chunk.getAttempt(), chunk.getStatus(),
+                    EncodingChunk.Status.PENDING) == 1) {
+                if (chunk.getS3Path() != null) {
+                    deleteObjectQuietly(chunk.getS3Path());
+                }
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void processStitchJob(Long videoId, Long formatId) {
+        Path workDir = null;
+        VideoFormat format = null;
+        try {
+            Video video = videoRepository.findById(videoId)
+                    .orElseThrow(() -> new EntityNotFoundException("Video not found with ID: " + videoId));
+
+            format = videoFormatRepository.findById(formatId)
+                    .orElseThrow(() -> new EntityNotFoundException("Video format not found with ID: " + formatId));
+
+            if (format.getStatus() != VideoFormat.Status.STITCHING) {
+                log.info("Skipping stitch job for format ID: {}, format is {}", formatId, format.getStatus());
+                return;
+            }
+
+            List<EncodingChunk> chunks = encodingChunkRepository.findByVideoFormatOrderByChunkIndex(format);
+            workDir = Files.createTempDirectory("stitch_" + videoId + "_");
+
+            StringBuilder concatList = new StringBuilder();
+            for (EncodingChunk chunk : chunks) {
+                Path chunkFile = workDir.resolve(chunk.getS3Path().substring(chunk.getS3Path().lastIndexOf('/') + 1));
+                try (InputStream is = minioService.getObject(minioConfig.getBucketName(), chunk.getS3Path())) {
+                    Files.copy(is, chunkFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+                concatList.append("file '").append(chunkFile.getFileName()).append("'\n");
+            }
+            Path listFile = workDir.resolve("chunks.txt");
+            Files.writeString(listFile, concatList.toString());
+
+            File output = workDir.resolve("stitched" + getFileExtension(format.getCodec())).toFile();
+            List<String> command = new ArrayList<>(List.of(
+                    ffmpegPath,
+                    "-y",
+                    "-f", "concat",
+                    "-safe", "0",
+                    "-i", listFile.toString()
+            ));
+
+            command.addAll(List.of("-c:v", "copy"));
+            command.addAll(getContainerParams(format.getCodec()));
+            command.add(output.getAbsolutePath());
+
+            if (!ffmpegSupervisor.run(command, "video " + videoId + "/" + format.getResolution() + "/stitch",
+                    getDuration(video), null)) {
+                throw new IllegalStateException("Stitching failed for video ID: " + videoId + ", format ID: " + formatId);
+            }
+
+            completeRendition(video, format, output);
+
+            for (EncodingChunk chunk : chunks) {
+                deleteObjectQuietly(chunk.getS3Path());
+            }
+            deleteSourceChunksIfSettled(videoId);
+
+            log.info("Stitched {} chunks for video ID: {}, resolution: {}, codec: {}",
+                    chunks.size(), videoId, format.getResolution(), format.getCodec());
 
         } catch (Exception e) {
-            log.error("Error processing encoding job for video ID: {}, resolution: {}",
-                    videoId, resolution, e);
+            log.error("Error processing stitch job for format ID: {} of video ID: {}", formatId, videoId, e);
 
-            self.updateEncodingStatus(videoId, resolution, VideoFormat.Status.ERROR, 0);
+            if (format != null) {
+                self.updateEncodingStatus(videoId, format.getResolution(), format.getCodec(), VideoFormat.Status.ERROR, 0);
+                deleteSourceChunksIfSettled(videoId);
+            }
+        } finally {
+            deleteDirectoryQuietly(workDir);
         }
     }
 
     @Override
     @Transactional
-    public void updateEncodingStatus(Long videoId, String resolution, VideoFormat.Status status, int progress) {
+    public void updateEncodingStatus(Long videoId, String resolution, String codec, VideoFormat.Status status, int progress) {
         try {
             Video video = videoRepository.findById(videoId)
                     .orElseThrow(() -> new EntityNotFoundException("Video not found with ID: " + videoId));
 
-            VideoFormat format = videoFormatRepository.findByVideoAndResolution(video, resolution)
+            VideoFormat format = videoFormatRepository.findByVideoAndResolutionAndCodec(video, resolution, codec)
                     .orElseThrow(() -> new EntityNotFoundException("Video format not found for video ID: " + videoId));
 
             format.setStatus(status);
@@ -194,6 +992,7 @@ public class VideoEncodingServiceImpl implements VideoEncodingService {
             Map<String, Object> statusUpdate = new HashMap<>();
             statusUpdate.put("videoId", videoId);
             statusUpdate.put("resolution", resolution);
+            statusUpdate.put("codec", codec);
             statusUpdate.put("status", status);
             statusUpdate.put("progress", progress);
 
@@ -203,57 +1002,60 @@ public class VideoEncodingServiceImpl implements VideoEncodingService {
         }
     }
 
+    /**
+     * Extracts the poster frame at 10% of the duration. The original is read through a
+     * presigned URL with the seek ahead of the input, so only the bytes around the frame
+     * are fetched instead of the whole file.
+     */
     @Override
     @Async
     public void generateThumbnail(Video video) {
         try {
-            log.info("Generating thumbnail for video ID: {}", video.getId());
-
-
-            File tempOriginal = File.createTempFile("thumb_original_", ".mp4");
-            try (InputStream is = minioService.getObject(minioConfig.getBucketName(), video.getS3Path());
-                 FileOutputStream fos = new FileOutputStream(tempOriginal)) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = is.read(buffer)) != -1) {
-                    fos.write(buffer, 0, bytesRead);
-                }
-            }
-
-            File tempThumb = File.createTempFile("thumbnail_", ".jpg");
-
-            ProcessBuilder probePb = new ProcessBuilder();
-            probePb.command(
-                    ffprobePath,
-                    "-v", "error",
-                    "-show_entries", "format=duration",
-                    "-of", "default=noprint_wrappers=1:nokey=1",
-                    tempOriginal.getAbsolutePath()
-            );
-
-            Process probeProcess = probePb.start();
-            String durationStr = new String(probeProcess.getInputStream().readAllBytes()).trim();
-            double duration = Double.parseDouble(durationStr);
+            String url = minioService.getPresignedUrl(minioConfig.getBucketName(), video.getS3Path(), 3600);
+            extractThumbnail(video, url, getDuration(video) * 0.1);
+        } catch (Exception e) {
+            log.error("Error generating thumbnail for video ID: {}", video.getId(), e);
+        }
+    }
 
-            double thumbTime = duration * 0.1;
+    /**
+     * Extracts the poster frame from part of the source, such as the leading chunks of an
+     * upload that is still arriving. The frame is taken at 10% of the duration, but no later
+     * than the given limit.
+     *
+     * @param video A probed video.
+     * @param input An ffmpeg input that reads the part of the source.
+     * @param maxSeconds The latest position the input is known to contain.
+     * @return true if the thumbnail was stored.
+     */
+    @Override
+    public boolean generateThumbnail(Video video, String input, double maxSeconds) {
+        try {
+            return extractThumbnail(video, input, Math.min(getDuration(video) * 0.1, maxSeconds));
+        } catch (Exception e) {
+            log.error("Error generating thumbnail for video ID: {}", video.getId(), e);
+            return false;
+        }
+    }
 
-            ProcessBuilder pb = new ProcessBuilder();
-            pb.command(
+    private boolean extractThumbnail(Video video, String input, double thumbTime) throws Exception {
+        log.info("Generating thumbnail for video ID: {}", video.getId());
+        File tempThumb = File.createTempFile("thumbnail_", ".jpg");
+        try {
+            List<String> command = List.of(
                     ffmpegPath,
-                    "-i", tempOriginal.getAbsolutePath(),
-                    "-ss", String.format("%.2f", thumbTime),
+                    "-y",
+                    "-ss", String.format(Locale.ROOT, "%.2f", thumbTime),
+                    "-i", input,
                     "-vframes", "1",
                     "-vf", "scale=640:-1",
                     "-q:v", "2",
                     tempThumb.getAbsolutePath()
             );
 
-            Process process = pb.start();
-            boolean completed = process.waitFor(5, TimeUnit.MINUTES);
-
-            if (!completed || process.exitValue() != 0) {
+            if (!ffmpegSupervisor.run(command, "video " + video.getId() + "/thumbnail", 0, null)) {
                 log.error("Thumbnail generation failed for video ID: {}", video.getId());
-                return;
+                return false;
             }
 
             String s3Key = minioConfig.getThumbnailPath() + "/" + video.getUser().getId() + "/" +
@@ -261,20 +1063,541 @@ public class VideoEncodingServiceImpl implements VideoEncodingService {
 
             minioService.uploadFile(minioConfig.getBucketName(), s3Key, tempThumb);
 
+            // Encoding workers update the same row concurrently, so only the thumbnail column is written
+            videoRepository.updateThumbnailPath(video.getId(), s3Key);
             video.setThumbnailPath(s3Key);
-            video.setDuration((int) Math.ceil(duration));
-            videoRepository.save(video);
-
-            tempOriginal.delete();
-            tempThumb.delete();
 
             log.info("Thumbnail generated for video ID: {}", video.getId());
+            return true;
+        } finally {
+            deleteQuietly(tempThumb);
+        }
+    }
 
+    private List<String> getRenditionOutputParams(VideoFormat format, int threads) {
+        String codec = format.getCodec();
+        List<String> params = new ArrayList<>(List.of(
+                "-c:v", getFFmpegCodec(codec),
+                "-b:v", format.getBitrate() + "k",
+                "-preset", "medium",
+                // Keyframes on segment boundaries keep CMAF segments aligned across renditions
+                "-force_key_frames", "expr:gte(t,n_forced*" + segmentDuration + ")"
+        ));
+        params.addAll(getEncoderThreadParams(codec, threads));
+        // Audio is encoded once by the audio job and muxed in when the rendition completes
+        params.add("-an");
+        params.addAll(getContainerParams(codec));
+        return params;
+    }
+
+    /**
+     * Caps the encoder at the scheduler's thread budget. libx265 sizes its own thread
+     * pool and ignores -threads, so it is limited through its pool setting.
+     */
+    private List<String> getEncoderThreadParams(String codec, int threads) {
+        switch (codec) {
+            case "H.265":
+                return List.of("-x265-params", "pools=" + threads);
+            case "VP9":
+                return List.of("-threads", String.valueOf(threads), "-row-mt", "1");
+            case "H.264":
+            default:
+                return List.of("-threads", String.valueOf(threads));
+        }
+    }
+
+    private void publishProgress(Long videoId, String resolution, String codec, int progress, double speed) {
+        Map<String, Object> statusUpdate = new HashMap<>();
+        statusUpdate.put("videoId", videoId);
+        statusUpdate.put("resolution", resolution);
+        statusUpdate.put("codec", codec);
+        statusUpdate.put("status", VideoFormat.Status.PROCESSING);
+        statusUpdate.put("progress", progress);
+        statusUpdate.put("speed", speed);
+
+        kafkaTemplate.send(encodingStatusTopic, videoId.toString(), statusUpdate);
+    }
+
+    private double getDuration(Video video) {
+        return video.getDuration() != null ? video.getDuration() : 0;
+    }
+
+    /**
+     * Uploads and packages a finished rendition and marks it READY. A video rendition that finishes
+     * before the shared audio of its family is left AWAITING_AUDIO, and the audio is muxed into its
+     * progressive file by whichever of the two workers sees the other one done.
+     */
+    private void completeRendition(Video video, VideoFormat format, File encodedFile) throws Exception {
+        String s3Key = getEncodedKey(video, format);
+
+        File muxed = null;
+        VideoFormat audio = null;
+        try {
+            // The progressive file carries the shared audio; the packaged rendition references it as its own track
+            File progressive = encodedFile;
+            audio = isAudioFormat(format) ? null : getSharedAudio(video, format.getCodec());
+            if (audio != null && audio.getStatus() == VideoFormat.Status.READY) {
+                muxed = File.createTempFile("muxed_", getFileExtension(format.getCodec()));
+                muxAudio(video, format, encodedFile.getAbsolutePath(), audio, muxed);
+                progressive = muxed;
+            }
+
+            minioService.uploadFile(minioConfig.getBucketName(), s3Key, progressive);
+            format.setFileSize(String.valueOf(progressive.length()));
+        } finally {
+            deleteQuietly(muxed);
+        }
+
+        try {
+            format.setPackagePath(videoPackagingService.packageRendition(video, format, encodedFile));
         } catch (Exception e) {
-            log.error("Error generating thumbnail for video ID: {}", video.getId(), e);
+            log.error("Packaging failed for video ID: {}, resolution: {}, codec: {}; progressive file only",
+                    video.getId(), format.getResolution(), format.getCodec(), e);
+        }
+        format.setS3Path(s3Key);
+
+        if (audio == null || audio.getStatus() == VideoFormat.Status.READY) {
+            format.setStatus(VideoFormat.Status.READY);
+            videoFormatRepository.save(format);
+
+            if (isAudioFormat(format)) {
+                for (VideoFormat waiting : videoFormatRepository.findByVideoAndStatus(video, VideoFormat.Status.AWAITING_AUDIO)) {
+                    if (format.getCodec().equals(getAudioFormatCodec(waiting.getCodec()))) {
+                        muxAwaitingRendition(video, waiting, format);
+                    }
+                }
+            }
+            finalizeIfAllReady(video);
+            return;
+        }
+
+        format.setStatus(VideoFormat.Status.AWAITING_AUDIO);
+        videoFormatRepository.save(format);
+
+        // Read after this rendition is marked, so either this worker or the audio worker sees the other one done
+        VideoFormat current = videoFormatRepository.findById(audio.getId()).orElse(null);
+        if (current == null) {
+            releaseWithoutAudio(video, format);
+            finalizeIfAllReady(video);
+        } else if (current.getStatus() == VideoFormat.Status.READY) {
+            muxAwaitingRendition(video, format, current);
+            finalizeIfAllReady(video);
+        } else {
+            log.info("Rendition {} {} of video ID: {} is waiting for its {} audio", format.getResolution(),
+                    format.getCodec(), video.getId(), audio.getCodec());
+        }
+    }
+
+    /**
+     * Muxes the shared audio into the progressive file of a rendition waiting for it and marks the
+     * rendition READY. Only the worker whose claim moves the rendition out of AWAITING_AUDIO muxes it.
+     */
+    private void muxAwaitingRendition(Video video, VideoFormat format, VideoFormat audio) {
+        if (videoFormatRepository.updateStatus(format.getId(), VideoFormat.Status.AWAITING_AUDIO,
+                VideoFormat.Status.PROCESSING) == 0) {
+            return;
+        }
+
+        File muxed = null;
+        try {
+            String videoOnly = format.getS3Path();
+            muxed = File.createTempFile("muxed_", getFileExtension(format.getCodec()));
+            muxAudio(video, format, minioService.getPresignedUrl(minioConfig.getBucketName(), videoOnly, 3600),
+                    audio, muxed);
+
+            String s3Key = getEncodedKey(video, format);
+            minioService.uploadFile(minioConfig.getBucketName(), s3Key, muxed);
+            format.setS3Path(s3Key);
+            format.setFileSize(String.valueOf(muxed.length()));
+            format.setStatus(VideoFormat.Status.READY);
+            videoFormatRepository.save(format);
+            deleteObjectQuietly(videoOnly);
+
+            log.info("Muxed {} audio into rendition {} {} of video ID: {}", audio.getCodec(),
+                    format.getResolution(), format.getCodec(), video.getId());
+        } catch (Exception e) {
+            log.error("Error muxing audio into rendition {} {} of video ID: {}", format.getResolution(),
+                    format.getCodec(), video.getId(), e);
+            self.updateEncodingStatus(video.getId(), format.getResolution(), format.getCodec(), VideoFormat.Status.ERROR, 0);
+        } finally {
+            deleteQuietly(muxed);
+        }
+        // A chunked rendition claimed here was not settled when its own stitch looked
+        deleteSourceChunksIfSettled(video.getId());
+    }
+
+    /**
+     * Marks a rendition waiting for audio READY as it is, once the source turned out to have none.
+     */
+    private void releaseWithoutAudio(Video video, VideoFormat format) {
+        if (videoFormatRepository.updateStatus(format.getId(), VideoFormat.Status.AWAITING_AUDIO,
+                VideoFormat.Status.READY) == 1) {
+            log.info("Rendition {} {} of video ID: {} is ready without audio", format.getResolution(),
+                    format.getCodec(), video.getId());
+        }
+    }
+
+    /**
+     * Finalizes the video once every one of its formats is READY. The manifests are written before the video
+     * is marked READY, so a READY video always has them; if they cannot be written the video is marked ERROR.
+     *
+     * @return true if this call finalized the video.
+     */
+    private boolean finalizeIfAllReady(Video video) throws Exception {
+        if (videoFormatRepository.countByVideoAndStatus(video, VideoFormat.Status.READY)
+                != videoFormatRepository.countByVideo(video)) {
+            return false;
+        }
+
+        // Workers finishing the last renditions together may both write the manifests; they write the same
+        // objects, and the conditional update below lets exactly one of them finalize the video
+        String manifestPath;
+        try {
+            manifestPath = writeManifestsWithRetry(video);
+        } catch (Exception e) {
+            log.error("Failed to write manifests for video ID: {}", video.getId(), e);
+            if (videoRepository.updateStatus(video.getId(), Video.Status.PROCESSING, Video.Status.ERROR) == 1) {
+                video.setStatus(Video.Status.ERROR);
+            }
+            return false;
+        }
+
+        int updated = videoRepository.updateStatusIfAllFormatsInStatus(video.getId(), Video.Status.PROCESSING,
+                Video.Status.READY, VideoFormat.Status.READY, manifestPath);
+
+        if (updated == 1) {
+            video.setStatus(Video.Status.READY);
+            video.setManifestPath(manifestPath);
+            log.info("All renditions ready for video ID: {}", video.getId());
+        }
+        return updated == 1;
+    }
+
+    private String writeManifestsWithRetry(Video video) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return videoPackagingService.writeManifests(video);
+            } catch (Exception e) {
+                if (attempt >= MANIFEST_ATTEMPTS) {
+                    throw e;
+                }
+                log.warn("Writing manifests for video ID: {} failed (attempt {}/{}), retrying", video.getId(),
+                        attempt, MANIFEST_ATTEMPTS, e);
+                Thread.sleep(MANIFEST_RETRY_DELAY_MS * attempt);
+            }
+        }
+    }
+
+    private void muxAudio(Video video, VideoFormat format, String videoInput, VideoFormat audio, File output) throws Exception {
+        String audioUrl = minioService.getPresignedUrl(minioConfig.getBucketName(), audio.getS3Path(), 3600);
+
+        List<String> command = new ArrayList<>(List.of(
+                ffmpegPath,
+                "-y",
+                "-i", videoInput,
+                "-i", audioUrl,
+                "-map", "0:v",
+                "-map", "1:a",
+                "-c", "copy"
+        ));
+        command.addAll(getContainerParams(format.getCodec()));
+        command.add(output.getAbsolutePath());
+
+        if (!ffmpegSupervisor.run(command, "video " + video.getId() + "/" + format.getResolution() + "/mux", 0, null)) {
+            throw new IllegalStateException("Muxing audio failed for video ID: " + video.getId()
+                    + ", resolution: " + format.getResolution() + ", codec: " + format.getCodec());
+        }
+    }
+
+    private String getEncodedKey(Video video, VideoFormat format) {
+        return minioConfig.getEncodedPath() + "/" + video.getUser().getId() + "/" + UUID.randomUUID() + '/' +
+                getBaseFilename(video.getOriginalFilename()) + "_" + format.getResolution() + getFileExtension(format.getCodec());
+    }
+
+    /**
+     * @return The shared audio rendition of the codec's family in any status, or null if the video has none.
+     */
+    private VideoFormat getSharedAudio(Video video, String codec) {
+        return videoFormatRepository.findByVideoAndResolutionAndCodec(
+                        video, VideoFormat.AUDIO_RESOLUTION, getAudioFormatCodec(codec))
+                .orElse(null);
+    }
+
+    private boolean isAudioFormat(VideoFormat format) {
+        return VideoFormat.AUDIO_RESOLUTION.equals(format.getResolution());
+    }
+
+    private VideoFormat createFormat(Video video, String resolution, String codec, int bitrate) {
+        VideoFormat format = new VideoFormat();
+        format.setVideo(video);
+        format.setResolution(resolution);
+        format.setCodec(codec);
+        format.setBitrate(bitrate);
+        format.setStatus(VideoFormat.Status.PROCESSING);
+        format.setS3Path("");
+        format.setFileSize("0");
+        return videoFormatRepository.save(format);
+    }
+
+    /**
+     * Creates every rendition of the video: one per resolution and codec, plus the shared
+     * audio renditions unless the source is known to have no audio.
+     *
+     * @return All created formats, audio included.
+     */
+    private List<VideoFormat> createFormats(Video video) {
+        List<String> resolutions = getResolutionsForSource(video);
+        List<VideoFormat> formats = new ArrayList<>();
+        Set<String> audioCodecs = new LinkedHashSet<>();
+
+        for (String codec : codecsConfig.split(",")) {
+            audioCodecs.add(getAudioFormatCodec(codec.trim()));
+
+            for (String resolution : resolutions) {
+                formats.add(createFormat(video, resolution, codec.trim(), getBitrateForSource(video, resolution)));
+            }
+        }
+
+        if (!Boolean.FALSE.equals(video.getHasAudio())) {
+            for (String audioCodec : audioCodecs) {
+                formats.add(createFormat(video, VideoFormat.AUDIO_RESOLUTION, audioCodec, audioBitrate));
+            }
+        }
+        return formats;
+    }
+
+    private boolean isChunked(Video video) {
+        // Short videos gain nothing from splitting and are encoded per rendition instead
+        return "CHUNKED".equals(encodingMode.trim().toUpperCase(Locale.ROOT))
+                && video.getDuration() != null && video.getDuration() >= chunkMinDuration;
+    }
+
+    /**
+     * Splitting is deterministic: the same packets are always cut at the same keyframes, so a
+     * prefix of the source yields the same leading chunks as the complete file.
+     */
+    private List<String> getSplitCommand(String input, Path workDir) {
+        // Stream copy can only cut on keyframes, so every chunk starts with one
+        return List.of(
+                ffmpegPath,
+                "-y",
+                "-i", input,
+                "-map", "0:v:0",
+                "-c", "copy",
+                "-f", "segment",
+                "-segment_time", String.valueOf(chunkDuration),
+                "-reset_timestamps", "1",
+                workDir.resolve(SOURCE_CHUNK_PATTERN).toString()
+        );
+    }
+
+    private void publishVideoJobs(Video video, List<VideoFormat> formats) {
+        String mode = encodingMode.trim().toUpperCase(Locale.ROOT);
+
+        if (isChunked(video)) {
+            publishEncodingJob(EncodingJobDTO.builder()
+                    .videoId(video.getId())
+                    .duration(video.getDuration())
+                    .mode(EncodingJobDTO.Mode.SPLIT)
+                    .build());
+
+            log.info("Split job submitted for video ID: {}, {} s chunks", video.getId(), chunkDuration);
+            return;
+        }
+
+        if ("LADDER".equals(mode)) {
+            Map<String, List<String>> ladders = formats.stream()
+                    .collect(Collectors.groupingBy(VideoFormat::getCodec, LinkedHashMap::new,
+                            Collectors.mapping(VideoFormat::getResolution, Collectors.toList())));
+
+            ladders.forEach((codec, resolutions) -> {
+                publishEncodingJob(EncodingJobDTO.builder()
+                        .videoId(video.getId())
+                        .codec(codec)
+                        .resolutions(resolutions)
+                        .duration(video.getDuration())
+                        .mode(EncodingJobDTO.Mode.LADDER)
+                        .build());
+
+                log.info("Ladder encoding job submitted for video ID: {}, codec: {}, resolutions: {}",
+                        video.getId(), codec, resolutions);
+            });
+            return;
+        }
+
+        for (VideoFormat format : formats) {
+            publishEncodingJob(EncodingJobDTO.builder()
+                    .videoId(video.getId())
+                    .resolution(format.getResolution())
+                    .codec(format.getCodec())
+                    .formatId(format.getId())
+                    .duration(video.getDuration())
+                    .mode(EncodingJobDTO.Mode.RENDITION)
+                    .build());
+
+            log.info("Encoding job submitted for video ID: {}, resolution: {}, codec: {}",
+                    video.getId(), format.getResolution(), format.getCodec());
+        }
+    }
+
+    private void publishEncodingJob(EncodingJobDTO job) {
+        // A key per rendition spreads one upload's jobs over every partition of the encoding queue
+        String key;
+        switch (job.getMode()) {
+            case LADDER:
+                key = job.getVideoId() + ":" + job.getCodec();
+                break;
+            case AUDIO:
+                key = job.getVideoId() + ":audio";
+                break;
+            case SPLIT:
+                key = job.getVideoId() + ":split";
+                break;
+            case CHUNK:
+                key = job.getVideoId() + ":" + job.getResolution() + ":" + job.getCodec() + ":" + job.getChunkIndex();
+                break;
+            default:
+                key = job.getVideoId() + ":" + job.getResolution() + ":" + job.getCodec();
+        }
+
+        // Workers on other nodes must not see the job before its VideoFormat row is committed
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    kafkaTemplate.send(encodingQueueTopic, key, job);
+                }
+            });
+        } else {
+            kafkaTemplate.send(encodingQueueTopic, key, job);
+        }
+    }
+
+    private void closeQuietly(SourceCacheService.Lease lease) {
+        if (lease != null) {
+            lease.close();
         }
     }
 
+    private void deleteQuietly(File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            log.warn("Could not delete temporary file {}", file);
+        }
+    }
+
+    private void deleteDirectoryQuietly(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted((p1, p2) -> p2.compareTo(p1)).map(Path::toFile).forEach(this::deleteQuietly);
+        } catch (Exception e) {
+            log.warn("Could not delete temporary directory {}", directory, e);
+        }
+    }
+
+    private void deleteObjectQuietly(String objectName) {
+        try {
+            minioService.deleteObject(minioConfig.getBucketName(), objectName);
+        } catch (Exception e) {
+            log.warn("Could not delete intermediate object {}", objectName, e);
+        }
+    }
+
+    /**
+     * Compares a local file with a stored object byte for byte.
+     */
+    private boolean matchesObject(String objectName, File file) {
+        try {
+            if (minioService.getObjectSize(minioConfig.getBucketName(), objectName) != file.length()) {
+                return false;
+            }
+            try (InputStream stored = minioService.getObject(minioConfig.getBucketName(), objectName);
+                 InputStream local = new FileInputStream(file)) {
+                byte[] storedBuffer = new byte[64 * 1024];
+                byte[] localBuffer = new byte[64 * 1024];
+                int read;
+                while ((read = stored.readNBytes(storedBuffer, 0, storedBuffer.length)) > 0) {
+                    if (local.readNBytes(localBuffer, 0, read) != read
+                            || !Arrays.equals(storedBuffer, 0, read, localBuffer, 0, read)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private String getChunkPrefix(Video video) {
+        return minioConfig.getEncodedPath() + "/" + video.getUser().getId() + "/" + video.getId() + "/chunks";
+    }
+
+    private String getSourceChunkKey(Video video, int chunkIndex) {
+        return getChunkPrefix(video) + "/source/" + String.format(Locale.ROOT, SOURCE_CHUNK_PATTERN, chunkIndex);
+    }
+
+    /**
+     * Returns the configured resolutions the source can actually fill. Rungs taller
+     * than the probed source are dropped, but the lowest rung is always kept so every
+     * upload gets at least one rendition. Without probe results the full ladder is used.
+     */
+    private List<String> getResolutionsForSource(Video video) {
+        List<String> configured = new ArrayList<>();
+        for (String resolution : resolutionsConfig.split(",")) {
+            configured.add(resolution.trim());
+        }
+
+        Integer sourceHeight = video.getSourceHeight();
+        if (sourceHeight == null || sourceHeight <= 0) {
+            return configured;
+        }
+
+        // Rungs are named by their short side, so portrait sources compare on width
+        int sourceLines = video.getSourceWidth() != null && video.getSourceWidth() > 0
+                ? Math.min(sourceHeight, video.getSourceWidth())
+                : sourceHeight;
+
+        List<String> resolutions = configured.stream()
+                .filter(resolution -> getResolutionHeight(resolution) <= sourceLines)
+                .collect(Collectors.toList());
+
+        if (resolutions.isEmpty()) {
+            configured.stream()
+                    .min((r1, r2) -> Integer.compare(getResolutionHeight(r1), getResolutionHeight(r2)))
+                    .ifPresent(resolutions::add);
+        }
+
+        if (resolutions.size() < configured.size()) {
+            log.info("Pruned ladder for video ID: {} to {} (source is {}x{})", video.getId(), resolutions,
+                    video.getSourceWidth(), sourceHeight);
+        }
+        return resolutions;
+    }
+
+    /**
+     * Returns the ladder bitrate for a resolution, capped relative to the source
+     * bitrate so a low-bitrate source is not re-encoded at a higher rate than it has.
+     */
+    private int getBitrateForSource(Video video, String resolution) {
+        int bitrate = getBitrateForResolution(resolution);
+        Long sourceBitrate = video.getSourceBitrate();
+        if (sourceBitrate == null || sourceBitrate <= 0) {
+            return bitrate;
+        }
+
+        int cap = (int) Math.max(MIN_VIDEO_BITRATE, sourceBitrate / 1000 * bitrateCapRatio);
+        return Math.min(bitrate, cap);
+    }
+
+    private int getResolutionHeight(String resolution) {
+        if (resolution.equals("4K")) {
+            return 2160;
+        }
+
+        return Integer.parseInt(resolution.replaceAll("[^0-9]", ""));
+    }
 
     private int getBitrateForResolution(String resolution) {
         switch (resolution) {
@@ -303,27 +1626,45 @@ public class VideoEncodingServiceImpl implements VideoEncodingService {
                 return "libx265";
             case "VP9":
                 return "libvpx-vp9";
+            case "AAC":
+                return "aac";
+            case "Opus":
+                return "libopus";
             default:
                 return "libx264";
         }
     }
 
-    private String getResolutionParams(String resolution) {
-        switch (resolution) {
-            case "240p":
-                return "-vf scale=-2:240";
-            case "360p":
-                return "-vf scale=-2:360";
-            case "480p":
-                return "-vf scale=-2:480";
-            case "720p":
-                return "-vf scale=-2:720";
-            case "1080p":
-                return "-vf scale=-2:1080";
-            case "4K":
-                return "-vf scale=-2:2160";
+    /**
+     * Returns the scale filter for a rung. Rungs are named by their short side, the same side the ladder is
+     * pruned on, so landscape sources are scaled to the rung's height and portrait sources to its width.
+     */
+    private String getScaleFilter(String resolution) {
+        int lines = getResolutionHeight(resolution);
+        return String.format(Locale.ROOT, "scale='if(gt(iw,ih),-2,%1$d)':'if(gt(iw,ih),%1$d,-2)'", lines);
+    }
+
+    /**
+     * Returns the codec of the shared audio rendition that goes with a video codec.
+     */
+    private String getAudioFormatCodec(String codec) {
+        switch (codec) {
+            case "VP9":
+                return "Opus";
+            default:
+                return "AAC";
+        }
+    }
+
+    private List<String> getContainerParams(String codec) {
+        switch (codec) {
+            case "H.265":
+                return List.of("-tag:v", "hvc1", "-movflags", "+faststart");
+            case "VP9":
+            case "Opus":
+                return List.of();
             default:
-                return "-vf scale=-2:720";
+                return List.of("-movflags", "+faststart");
         }
     }
 
@@ -333,7 +1674,10 @@ public class VideoEncodingServiceImpl implements VideoEncodingService {
             case "H.265":
                 return ".mp4";
             case "VP9":
+            case "Opus":
                 return ".webm";
+            case "AAC":
+                return ".m4a";
             default:
                 return ".mp4";
         }
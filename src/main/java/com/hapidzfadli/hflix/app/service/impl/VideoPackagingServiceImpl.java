@@ -0,0 +1,337 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.MinioService;
+import com.hapidzfadli.hflix.app.service.VideoPackagingService;
+import com.hapidzfadli.hflix.config.MinioConfig;
+import com.hapidzfadli.hflix.domain.entity.Video;
+import com.hapidzfadli.hflix.domain.entity.VideoFormat;
+import com.hapidzfadli.hflix.domain.repository.VideoFormatRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class VideoPackagingServiceImpl implements VideoPackagingService {
+
+    private static final String MEDIA_PLAYLIST = "index.m3u8";
+    private static final String MASTER_PLAYLIST = "master.m3u8";
+    private static final String DASH_MANIFEST = "manifest.mpd";
+    private static final String INIT_SEGMENT = "init.mp4";
+    private static final String SEGMENT_PATTERN = "seg_%05d.m4s";
+
+    private final VideoFormatRepository videoFormatRepository;
+    private final MinioService minioService;
+    private final MinioConfig minioConfig;
+
+    @Value("${ffmpeg.binary.path}")
+    private String ffmpegPath;
+
+    @Value("${video.packaging.segment-duration}")
+    private int segmentDuration;
+
+    @Override
+    public String packageRendition(Video video, VideoFormat format, File encodedFile) throws Exception {
+        String renditionDir = getRenditionDir(format);
+        Path workDir = Files.createTempDirectory("cmaf_" + video.getId() + "_" + renditionDir + "_");
+
+        try {
+            ProcessBuilder pb = new ProcessBuilder();
+            pb.directory(workDir.toFile());
+            pb.command(
+                    ffmpegPath,
+                    "-y",
+                    "-loglevel", "error",
+                    "-i", encodedFile.getAbsolutePath(),
+                    "-map", "0",
+                    "-c", "copy",
+                    "-f", "hls",
+                    "-hls_time", String.valueOf(segmentDuration),
+                    "-hls_playlist_type", "vod",
+                    "-hls_segment_type", "fmp4",
+                    "-hls_fmp4_init_filename", INIT_SEGMENT,
+                    "-hls_segment_filename", SEGMENT_PATTERN,
+                    "-start_number", "1",
+                    MEDIA_PLAYLIST
+            );
+            pb.redirectErrorStream(true);
+            pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+
+            Process process = pb.start();
+            boolean completed = process.waitFor(1, TimeUnit.HOURS);
+
+            if (!completed || process.exitValue() != 0) {
+                process.destroy();
+                throw new IllegalStateException("Packaging failed for video ID: " + video.getId() + ", rendition: " + renditionDir);
+            }
+
+            String prefix = getPackagePrefix(video) + "/" + renditionDir;
+            try (Stream<Path> files = Files.list(workDir)) {
+                for (Path file : files.collect(Collectors.toList())) {
+                    minioService.uploadFile(minioConfig.getBucketName(),
+                            prefix + "/" + file.getFileName(), file.toFile());
+                }
+            }
+
+            log.info("Packaged video ID: {}, rendition: {} to {}", video.getId(), renditionDir, prefix);
+            return prefix;
+
+        } finally {
+            try (Stream<Path> files = Files.walk(workDir)) {
+                files.map(Path::toFile).forEach(File::delete);
+            }
+            workDir.toFile().delete();
+        }
+    }
+
+    @Override
+    public String writeManifests(Video video) throws Exception {
+        List<VideoFormat> formats = videoFormatRepository.findByVideoAndStatus(video, VideoFormat.Status.READY)
+                .stream()
+                .filter(format -> format.getPackagePath() != null && !format.getPackagePath().isEmpty())
+                .sorted((f1, f2) -> Integer.compare(f1.getBitrate(), f2.getBitrate()))
+                .collect(Collectors.toList());
+
+        if (formats.isEmpty()) {
+            log.warn("No packaged renditions for video ID: {}, skipping manifests", video.getId());
+            return null;
+        }
+
+        Map<Long, List<Double>> timelines = new LinkedHashMap<>();
+        for (VideoFormat format : formats) {
+            timelines.put(format.getId(), readSegmentDurations(format.getPackagePath() + "/" + MEDIA_PLAYLIST));
+        }
+
+        // Audio is packaged once per audio codec and referenced by every video rendition of its family
+        Map<String, VideoFormat> audioByCodec = new LinkedHashMap<>();
+        List<VideoFormat> videoFormats = new ArrayList<>();
+        for (VideoFormat format : formats) {
+            if (isAudio(format)) {
+                audioByCodec.put(format.getCodec(), format);
+            } else {
+                videoFormats.add(format);
+            }
+        }
+
+        String prefix = getPackagePrefix(video);
+        uploadText(prefix + "/" + MASTER_PLAYLIST, buildMasterPlaylist(videoFormats, audioByCodec));
+        uploadText(prefix + "/" + DASH_MANIFEST, buildDashManifest(videoFormats, audioByCodec, timelines));
+
+        log.info("Wrote HLS and DASH manifests for video ID: {} with {} renditions", video.getId(), formats.size());
+        return prefix;
+    }
+
+    @Override
+    public String getPackagePrefix(Video video) {
+        return minioConfig.getEncodedPath() + "/" + video.getUser().getId() + "/" + video.getId() + "/cmaf";
+    }
+
+    private String buildMasterPlaylist(List<VideoFormat> formats, Map<String, VideoFormat> audioByCodec) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#EXTM3U\n");
+        sb.append("#EXT-X-VERSION:7\n");
+        sb.append("#EXT-X-INDEPENDENT-SEGMENTS\n");
+
+        for (VideoFormat audio : audioByCodec.values()) {
+            String groupId = getRenditionDir(audio);
+            sb.append("#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"").append(groupId).append("\"")
+                    .append(",NAME=\"").append(audio.getCodec()).append("\",DEFAULT=YES,AUTOSELECT=YES")
+                    .append(",URI=\"").append(groupId).append("/").append(MEDIA_PLAYLIST).append("\"\n");
+        }
+
+        for (VideoFormat format : formats) {
+            VideoFormat audio = audioByCodec.get(getAudioCodec(format.getCodec()));
+            long bandwidth = getBandwidth(format) + (audio != null ? getBandwidth(audio) : 0);
+            String codecs = getCodecsString(format) + (audio != null ? "," + getCodecsString(audio) : "");
+
+            sb.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(bandwidth)
+                    .append(",CODECS=\"").append(codecs).append("\"");
+            if (audio != null) {
+                sb.append(",AUDIO=\"").append(getRenditionDir(audio)).append("\"");
+            }
+            sb.append("\n");
+            sb.append(getRenditionDir(format)).append("/").append(MEDIA_PLAYLIST).append("\n");
+        }
+        return sb.toString();
+    }
+
+    private String buildDashManifest(List<VideoFormat> formats, Map<String, VideoFormat> audioByCodec,
+                                     Map<Long, List<Double>> timelines) {
+        double duration = timelines.values().stream()
+                .mapToDouble(durations -> durations.stream().mapToDouble(Double::doubleValue).sum())
+                .max()
+                .orElse(0);
+
+        // Renditions of different codecs cannot be switched seamlessly, so each codec gets its own set
+        Map<String, List<VideoFormat>> byCodec = formats.stream()
+                .collect(Collectors.groupingBy(VideoFormat::getCodec, LinkedHashMap::new, Collectors.toList()));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" profiles=\"urn:mpeg:dash:profile:isoff-live:2011\"")
+                .append(" type=\"static\" mediaPresentationDuration=\"").append(formatDuration(duration)).append("\"")
+                .append(" minBufferTime=\"PT").append(segmentDuration).append("S\">\n");
+        sb.append("  <Period id=\"0\" start=\"PT0S\">\n");
+
+        int adaptationSetId = 0;
+        for (List<VideoFormat> codecFormats : byCodec.values()) {
+            sb.append("    <AdaptationSet id=\"").append(adaptationSetId++).append("\" contentType=\"video\"")
+                    .append(" mimeType=\"video/mp4\" segmentAlignment=\"true\" startWithSAP=\"1\">\n");
+
+            for (VideoFormat format : codecFormats) {
+                appendRepresentation(sb, format, " height=\"" + parseResolutionHeight(format.getResolution()) + "\"",
+                        timelines.get(format.getId()));
+            }
+            sb.append("    </AdaptationSet>\n");
+        }
+
+        for (VideoFormat audio : audioByCodec.values()) {
+            sb.append("    <AdaptationSet id=\"").append(adaptationSetId++).append("\" contentType=\"audio\"")
+                    .append(" mimeType=\"audio/mp4\" segmentAlignment=\"true\" startWithSAP=\"1\">\n");
+            appendRepresentation(sb, audio, "", timelines.get(audio.getId()));
+            sb.append("    </AdaptationSet>\n");
+        }
+
+        sb.append("  </Period>\n");
+        sb.append("</MPD>\n");
+        return sb.toString();
+    }
+
+    private void appendRepresentation(StringBuilder sb, VideoFormat format, String attributes, List<Double> timeline) {
+        String renditionDir = getRenditionDir(format);
+        sb.append("      <Representation id=\"").append(renditionDir).append("\"")
+                .append(" bandwidth=\"").append(getBandwidth(format)).append("\"")
+                .append(" codecs=\"").append(getCodecsString(format)).append("\"")
+                .append(attributes).append(">\n");
+        sb.append("        <BaseURL>").append(renditionDir).append("/</BaseURL>\n");
+        sb.append("        <SegmentTemplate timescale=\"1000\" initialization=\"").append(INIT_SEGMENT).append("\"")
+                .append(" media=\"seg_$Number%05d$.m4s\" startNumber=\"1\">\n");
+        sb.append("          <SegmentTimeline>\n");
+        appendTimeline(sb, timeline);
+        sb.append("          </SegmentTimeline>\n");
+        sb.append("        </SegmentTemplate>\n");
+        sb.append("      </Representation>\n");
+    }
+
+    private void appendTimeline(StringBuilder sb, List<Double> durations) {
+        long previous = -1;
+        int repeat = 0;
+
+        for (Double duration : durations) {
+            long millis = Math.round(duration * 1000);
+            if (millis == previous) {
+                repeat++;
+                continue;
+            }
+            if (previous >= 0) {
+                appendTimelineEntry(sb, previous, repeat);
+            }
+            previous = millis;
+            repeat = 0;
+        }
+        if (previous >= 0) {
+            appendTimelineEntry(sb, previous, repeat);
+        }
+    }
+
+    private void appendTimelineEntry(StringBuilder sb, long duration, int repeat) {
+        sb.append("            <S d=\"").append(duration).append("\"");
+        if (repeat > 0) {
+            sb.append(" r=\"").append(repeat).append("\"");
+        }
+        sb.append("/>\n");
+    }
+
+    private List<Double> readSegmentDurations(String playlistKey) throws Exception {
+        List<Double> durations = new ArrayList<>();
+        try (InputStream is = minioService.getObject(minioConfig.getBucketName(), playlistKey)) {
+            String playlist = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            for (String line : playlist.split("\n")) {
+                if (line.startsWith("#EXTINF:")) {
+                    String value = line.substring("#EXTINF:".length());
+                    int comma = value.indexOf(',');
+                    durations.add(Double.parseDouble(comma >= 0 ? value.substring(0, comma) : value));
+                }
+            }
+        }
+        return durations;
+    }
+
+    private void uploadText(String objectName, String content) throws Exception {
+        Path temp = Files.createTempFile("manifest_", objectName.substring(objectName.lastIndexOf('.')));
+        try {
+            Files.writeString(temp, content);
+            minioService.uploadFile(minioConfig.getBucketName(), objectName, temp.toFile());
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private String formatDuration(double seconds) {
+        return String.format(Locale.ROOT, "PT%.3fS", seconds);
+    }
+
+    private long getBandwidth(VideoFormat format) {
+        return format.getBitrate() * 1000L;
+    }
+
+    private boolean isAudio(VideoFormat format) {
+        return VideoFormat.AUDIO_RESOLUTION.equals(format.getResolution());
+    }
+
+    private String getAudioCodec(String codec) {
+        return "VP9".equals(codec) ? "Opus" : "AAC";
+    }
+
+    private String getRenditionDir(VideoFormat format) {
+        return format.getCodec().toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]", "") + "_"
+                + format.getResolution().toLowerCase(Locale.ROOT);
+    }
+
+    private String getCodecsString(VideoFormat format) {
+        switch (format.getCodec()) {
+            case "AAC":
+                return "mp4a.40.2";
+            case "Opus":
+                return "opus";
+            default:
+                break;
+        }
+
+        int height = parseResolutionHeight(format.getResolution());
+        switch (format.getCodec()) {
+            case "H.265":
+                return height <= 720 ? "hvc1.1.6.L93.90" : height <= 1080 ? "hvc1.1.6.L120.90" : "hvc1.1.6.L150.90";
+            case "VP9":
+                return height <= 1080 ? "vp09.00.40.08" : "vp09.00.51.08";
+            case "H.264":
+            default:
+                return height <= 480 ? "avc1.64001e" : height <= 720 ? "avc1.64001f"
+                        : height <= 1080 ? "avc1.640028" : "avc1.640033";
+        }
+    }
+
+    private int parseResolutionHeight(String resolution) {
+        if (resolution.equals("4K")) {
+            return 2160;
+        }
+
+        return Integer.parseInt(resolution.replaceAll("[^0-9]", ""));
+    }
+}
@@ -0,0 +1,140 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hapidzfadli.hflix.app.service.MinioService;
+import com.hapidzfadli.hflix.app.service.VideoProbeService;
+import com.hapidzfadli.hflix.config.MinioConfig;
+import com.hapidzfadli.hflix.domain.entity.Video;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class VideoProbeServiceImpl implements VideoProbeService {
+
+    private static final int PRESIGNED_URL_EXPIRY_SECONDS = 3600;
+
+    private final MinioService minioService;
+    private final MinioConfig minioConfig;
+    private final ObjectMapper objectMapper;
+
+    @Value("${ffmpeg.probe.path}")
+    private String ffprobePath;
+
+    /**
+     * Probes the original through a presigned URL, so ffprobe only reads the container
+     * header instead of the whole file, and stores the results on the video.
+     *
+     * @param video The video whose original is to be probed.
+     * @return true if the source was probed successfully.
+     */
+    @Override
+    public boolean probeSource(Video video) {
+        try {
+            String url = minioService.getPresignedUrl(minioConfig.getBucketName(), video.getS3Path(),
+                    PRESIGNED_URL_EXPIRY_SECONDS);
+            return applyProbe(video, url);
+        } catch (Exception e) {
+            log.error("Error probing source for video ID: {}", video.getId(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Probes an arbitrary ffprobe input, such as the leading chunks of an upload that is
+     * still in progress, and stores the results on the video.
+     *
+     * @param video The video the input belongs to.
+     * @param input A file path or URL readable by ffprobe.
+     * @return true if the input was probed successfully.
+     */
+    @Override
+    public boolean probeSource(Video video, String input) {
+        try {
+            return applyProbe(video, input);
+        } catch (Exception e) {
+            log.error("Error probing input for video ID: {}", video.getId(), e);
+            return false;
+        }
+    }
+
+    private boolean applyProbe(Video video, String input) throws Exception {
+        ProcessBuilder pb = new ProcessBuilder();
+        pb.command(
+                ffprobePath,
+                "-v", "error",
+                "-print_format", "json",
+                "-show_format",
+                "-show_streams",
+                input
+        );
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+
+        Process process = pb.start();
+        byte[] output = process.getInputStream().readAllBytes();
+        boolean completed = process.waitFor(2, TimeUnit.MINUTES);
+
+        if (!completed || process.exitValue() != 0) {
+            process.destroy();
+            log.error("ffprobe failed for video ID: {}", video.getId());
+            return false;
+        }
+
+        JsonNode root = objectMapper.readTree(output);
+        JsonNode format = root.path("format");
+        JsonNode videoStream = null;
+        boolean hasAudio = false;
+
+        for (JsonNode stream : root.path("streams")) {
+            String codecType = stream.path("codec_type").asText();
+            if ("video".equals(codecType) && videoStream == null
+                    && stream.path("disposition").path("attached_pic").asInt(0) == 0) {
+                videoStream = stream;
+            } else if ("audio".equals(codecType)) {
+                hasAudio = true;
+            }
+        }
+
+        if (videoStream == null) {
+            log.error("No video stream found in source for video ID: {}", video.getId());
+            return false;
+        }
+
+        double duration = format.path("duration").asDouble(0);
+        long formatBitrate = format.path("bit_rate").asLong(0);
+        long streamBitrate = videoStream.path("bit_rate").asLong(0);
+
+        video.setSourceWidth(videoStream.path("width").asInt());
+        video.setSourceHeight(videoStream.path("height").asInt());
+        video.setSourceFrameRate(parseFrameRate(videoStream.path("avg_frame_rate").asText("0/0")));
+        video.setSourceVideoCodec(videoStream.path("codec_name").asText(null));
+        // Containers such as Matroska carry no per-stream bitrate; fall back to the overall rate
+        video.setSourceBitrate(streamBitrate > 0 ? streamBitrate : formatBitrate);
+        video.setHasAudio(hasAudio);
+        if (duration > 0) {
+            video.setDuration((int) Math.ceil(duration));
+        }
+
+        log.info("Probed video ID: {}: {}x{} @ {} fps, {} bps, {} s, audio: {}", video.getId(),
+                video.getSourceWidth(), video.getSourceHeight(), video.getSourceFrameRate(),
+                video.getSourceBitrate(), video.getDuration(), hasAudio);
+        return true;
+    }
+
+    private Double parseFrameRate(String rate) {
+        String[] parts = rate.split("/");
+        try {
+            double numerator = Double.parseDouble(parts[0]);
+            double denominator = parts.length > 1 ? Double.parseDouble(parts[1]) : 1;
+            return denominator > 0 ? numerator / denominator : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.MinioService;
+import com.hapidzfadli.hflix.app.service.VideoSegmentCacheService;
+import com.hapidzfadli.hflix.app.streaming.DiskBlockStore;
+import com.hapidzfadli.hflix.app.streaming.OffHeapBlockCache;
+import com.hapidzfadli.hflix.app.streaming.StorageGuard;
+import com.hapidzfadli.hflix.app.streaming.TransferBufferPool;
+import com.hapidzfadli.hflix.config.MinioConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class VideoSegmentCacheServiceImpl implements VideoSegmentCacheService {
+
+    private final MinioService minioService;
+    private final MinioConfig minioConfig;
+    private final DiskBlockStore diskBlockStore;
+    private final OffHeapBlockCache offHeapBlockCache;
+    private final TransferBufferPool transferBufferPool;
+    private final StorageGuard storageGuard;
+
+    @Value("${video.cache.disk.enabled}")
+    private boolean diskCacheEnabled;
+
+    @Value("${video.cache.block-size}")
+    private long blockSize;
+
+    @Override
+    public void transferRange(String objectName, long objectSize, long start, long end, OutputStream out) throws Exception {
+        if (!diskCacheEnabled) {
+            // A refused call throws before anything is written
+            try (InputStream is = openRange(objectName, start, end)) {
+                transferBufferPool.transfer(is, out, end - start);
+            }
+            return;
+        }
+
+        WritableByteChannel target = Channels.newChannel(out);
+        long position = start;
+
+        while (position < end) {
+            long blockIndex = position / blockSize;
+            long blockStart = blockIndex * blockSize;
+            long blockEnd = Math.min(blockStart + blockSize, objectSize);
+            long count = Math.min(end, blockEnd) - position;
+            long offset = position - blockStart;
+            String blockKey = objectName + ":" + blockIndex;
+
+            if (offHeapBlockCache.isEnabled()) {
+                OffHeapBlockCache.Block cached = offHeapBlockCache.get(blockKey);
+                if (cached != null) {
+                    try {
+                        ByteBuffer view = cached.view((int) offset, (int) count);
+                        while (view.hasRemaining()) {
+                            target.write(view);
+                        }
+                    } finally {
+                        cached.release();
+                    }
+                    position += count;
+                    continue;
+                }
+            }
+
+            if (position == start && !diskBlockStore.contains(objectName, blockIndex)) {
+                // Refuse before the first byte is written so the client still gets a 503 instead
+                // of a broken stream; ranges served from the caches never need storage
+                storageGuard.checkAvailable(StorageGuard.Operation.GET_RANGE);
+            }
+
+            try (FileChannel block = diskBlockStore.openBlock(objectName, blockIndex, blockStart, blockEnd,
+                    (from, to) -> openRange(objectName, from, to))) {
+                long sent = 0;
+                while (sent < count) {
+                    long written = block.transferTo(offset + sent, count - sent, target);
+                    if (written <= 0) {
+                        throw new IllegalStateException("Cached block for " + objectName + " is truncated");
+                    }
+                    sent += written;
+                }
+
+                if (offHeapBlockCache.isEnabled()) {
+                    offHeapBlockCache.admit(blockKey, block, (int) (blockEnd - blockStart));
+                }
+            }
+
+            position += count;
+        }
+    }
+
+    private InputStream openRange(String objectName, long start, long end) throws Exception {
+        return storageGuard.openStream(StorageGuard.Operation.GET_RANGE,
+                () -> minioService.getObjectRange(minioConfig.getBucketName(), objectName, start, end));
+    }
+}
@@ -4,8 +4,11 @@ import com.hapidzfadli.hflix.api.dto.VideoDTO;
 import com.hapidzfadli.hflix.api.dto.VideoFormatDTO;
 import com.hapidzfadli.hflix.api.dto.VideoStreamInfoDTO;
 import com.hapidzfadli.hflix.api.dto.VideoViewDTO;
+import com.hapidzfadli.hflix.api.exception.StorageUnavailableException;
 import com.hapidzfadli.hflix.app.service.MinioService;
+import com.hapidzfadli.hflix.app.service.VideoSegmentCacheService;
 import com.hapidzfadli.hflix.app.service.VideoService;
+import com.hapidzfadli.hflix.app.streaming.StorageGuard;
 import com.hapidzfadli.hflix.config.MinioConfig;
 import com.hapidzfadli.hflix.domain.entity.User;
 import com.hapidzfadli.hflix.domain.entity.Video;
@@ -17,19 +20,27 @@ import com.hapidzfadli.hflix.domain.repository.VideoRepository;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
@@ -43,8 +54,23 @@ public class VideoServiceImpl implements VideoService {
     private final MinioService minioService;
     private final MinioConfig minioConfig;
     private final KafkaTemplate<String, VideoViewDTO> kafkaTemplate;
+    private final VideoSegmentCacheService videoSegmentCacheService;
+    private final StorageGuard storageGuard;
+
+    @Value("${video.streaming.chunk-size}")
+    private long streamingChunkSize;
+
+    private static final int PACKAGED_SIZE_CACHE_ENTRIES = 10_000;
+
+    // Segments and init fragments are immutable, so their sizes can be remembered instead of stat-ing MinIO per request
+    private final Map<String, Long> packagedObjectSizes = Collections.synchronizedMap(
+            new LinkedHashMap<String, Long>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > PACKAGED_SIZE_CACHE_ENTRIES;
+                }
+            });
 
-    private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024; // 1MB
     private static final String KAFKA_TOPIC_VIDEO_VIEWS = "video-views";
 
     @Override
@@ -86,8 +112,7 @@ public class VideoServiceImpl implements VideoService {
             throw new IllegalStateException("Video is not ready for streaming");
         }
 
-        List<VideoFormat> formats = videoFormatRepository.findByVideoAndStatus(
-                video, VideoFormat.Status.READY);
+        List<VideoFormat> formats = getReadyVideoFormats(video);
 
         List<VideoFormatDTO> formatDTOs = formats.stream()
                 .map(format -> VideoFormatDTO.builder()
@@ -103,12 +128,14 @@ public class VideoServiceImpl implements VideoService {
                 .title(video.getTitle())
                 .duration(video.getDuration())
                 .thumbnailUrl("/api/videos/" + video.getId() + "/thumbnail")
+                .hlsUrl(video.getManifestPath() != null ? "/api/videos/" + video.getId() + "/cmaf/master.m3u8" : null)
+                .dashUrl(video.getManifestPath() != null ? "/api/videos/" + video.getId() + "/cmaf/manifest.mpd" : null)
                 .formats(formatDTOs)
                 .build();
     }
 
     @Override
-    public ResponseEntity<byte[]> streamVideo(Long videoId, String resolution, String rangeHeader) {
+    public ResponseEntity<StreamingResponseBody> streamVideo(Long videoId, String resolution, String rangeHeader) {
         Video video = videoRepository.findById(videoId)
                 .orElseThrow(() -> new EntityNotFoundException("Video not found"));
 
@@ -116,17 +143,14 @@ public class VideoServiceImpl implements VideoService {
             throw new IllegalStateException("Video is not ready for streaming");
         }
 
+        List<VideoFormat> formats = getReadyVideoFormats(video);
         VideoFormat format;
         if (resolution != null && !resolution.isEmpty()) {
-            format = videoFormatRepository.findByVideoAndResolution(video, resolution)
-                    .orElseGet(() -> {
-                        List<VideoFormat> formats = videoFormatRepository.findByVideoAndStatus(
-                                video, VideoFormat.Status.READY);
-                        return getBestMatchFormat(formats, resolution);
-                    });
+            format = formats.stream()
+                    .filter(f -> f.getResolution().equals(resolution))
+                    .findFirst()
+                    .orElseGet(() -> getBestMatchFormat(formats, resolution));
         } else {
-            List<VideoFormat> formats = videoFormatRepository.findByVideoAndStatus(
-                    video, VideoFormat.Status.READY);
             format = getHighestResolutionFormat(formats);
         }
 
@@ -134,43 +158,100 @@ public class VideoServiceImpl implements VideoService {
             throw new IllegalStateException("No streaming formats available for this video");
         }
 
-        try {
-            long start = 0;
-            long end = Long.parseLong(format.getFileSize()) - 1;
+        long fileSize = Long.parseLong(format.getFileSize());
+        long start = 0;
+        long end = -1;
 
-            if (rangeHeader != null && rangeHeader.startsWith("bytes=")) {
-                String[] ranges = rangeHeader.substring(6).split("-");
-                start = Long.parseLong(ranges[0]);
+        if (rangeHeader != null && rangeHeader.startsWith("bytes=")) {
+            String[] ranges = rangeHeader.substring(6).split("-");
+            start = Long.parseLong(ranges[0]);
 
-                if (ranges.length > 1 && !ranges[1].isEmpty()) {
-                    end = Long.parseLong(ranges[1]);
-                }
+            if (ranges.length > 1 && !ranges[1].isEmpty()) {
+                end = Long.parseLong(ranges[1]);
+            }
+        }
+
+        // Open-ended requests are served one chunk at a time; explicit ranges are honoured in full
+        if (end < 0) {
+            end = start + streamingChunkSize - 1;
+        }
+        end = Math.min(end, fileSize - 1);
+
+        if (start > end) {
+            throw new ResponseStatusException(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE,
+                    "Requested range not satisfiable");
+        }
+
+        long rangeStart = start;
+        long contentLength = end - start + 1;
+        String objectName = format.getS3Path();
+
+        StreamingResponseBody body = outputStream -> {
+            try {
+                videoSegmentCacheService.transferRange(objectName, fileSize, rangeStart, rangeStart + contentLength, outputStream);
+            } catch (IOException | StorageUnavailableException e) {
+                throw e;
+            } catch (Exception e) {
+                log.error("Error streaming video: {}", e.getMessage(), e);
+                throw new IOException("Error streaming video", e);
             }
+        };
 
-            long contentLength = end - start + 1;
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Content-Type", getContentType(format.getCodec()));
+        headers.add("Accept-Ranges", "bytes");
+        headers.add("Content-Range", String.format("bytes %d-%d/%d", start, end, fileSize));
+        headers.setContentLength(contentLength);
 
-            InputStream inputStream = minioService.getObjectRange(
-                    minioConfig.getBucketName(),
-                    format.getS3Path(),
-                    start,
-                    contentLength > DEFAULT_CHUNK_SIZE ? start + DEFAULT_CHUNK_SIZE - 1 : end
-            );
+        return new ResponseEntity<>(body, headers, HttpStatus.PARTIAL_CONTENT);
+    }
 
-            byte[] data = IOUtils.toByteArray(inputStream);
-            inputStream.close();
+    @Override
+    public ResponseEntity<StreamingResponseBody> streamPackagedObject(Long videoId, String path) {
+        Video video = videoRepository.findById(videoId)
+                .orElseThrow(() -> new EntityNotFoundException("Video not found"));
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.add("Content-Type", getContentType(format.getCodec()));
-            headers.add("Accept-Ranges", "bytes");
-            headers.add("Content-Range", String.format("bytes %d-%d/%d", start, start + data.length - 1, Long.parseLong(format.getFileSize())));
-            headers.setContentLength(data.length);
+        if (video.getManifestPath() == null) {
+            throw new EntityNotFoundException("Packaged stream not available for this video");
+        }
 
-            return new ResponseEntity<>(data, headers, HttpStatus.PARTIAL_CONTENT);
+        String relativePath = path.startsWith("/") ? path.substring(1) : path;
+        if (relativePath.isEmpty() || relativePath.contains("..")) {
+            throw new IllegalArgumentException("Invalid packaged stream path");
+        }
 
-        } catch (Exception e) {
-            log.error("Error streaming video: {}", e.getMessage(), e);
-            throw new RuntimeException("Error streaming video", e);
+        String objectName = video.getManifestPath() + "/" + relativePath;
+
+        // Manifests may be rewritten on re-encode, so they are read from storage every time instead of
+        // going through the size and block caches, and browsers only keep them briefly
+        if (relativePath.endsWith(".m3u8") || relativePath.endsWith(".mpd")) {
+            byte[] manifest = readPackagedManifest(objectName);
+            StreamingResponseBody body = outputStream -> outputStream.write(manifest);
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_TYPE, getPackagedContentType(relativePath))
+                    .cacheControl(CacheControl.maxAge(60, TimeUnit.SECONDS).cachePublic())
+                    .contentLength(manifest.length)
+                    .body(body);
         }
+
+        long objectSize = getPackagedObjectSize(objectName);
+
+        StreamingResponseBody body = outputStream -> {
+            try {
+                videoSegmentCacheService.transferRange(objectName, objectSize, 0, objectSize, outputStream);
+            } catch (IOException | StorageUnavailableException e) {
+                throw e;
+            } catch (Exception e) {
+                log.error("Error streaming packaged object {}: {}", objectName, e.getMessage(), e);
+                throw new IOException("Error streaming packaged object", e);
+            }
+        };
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, getPackagedContentType(relativePath))
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable())
+                .contentLength(objectSize)
+                .body(body);
     }
 
     @Override
@@ -191,6 +272,16 @@ public class VideoServiceImpl implements VideoService {
         kafkaTemplate.send(KAFKA_TOPIC_VIDEO_VIEWS, videoView);
     }
 
+    /**
+     * Returns the READY video renditions, leaving out the shared audio renditions,
+     * which are only served as a separate track of the packaged stream.
+     */
+    private List<VideoFormat> getReadyVideoFormats(Video video) {
+        return videoFormatRepository.findByVideoAndStatus(video, VideoFormat.Status.READY).stream()
+                .filter(format -> !VideoFormat.AUDIO_RESOLUTION.equals(format.getResolution()))
+                .collect(Collectors.toList());
+    }
+
     private VideoFormat getBestMatchFormat(List<VideoFormat> formats, String requestedResolution) {
         int requestedHeight = parseResolutionHeight(requestedResolution);
 
@@ -221,6 +312,48 @@ public class VideoServiceImpl implements VideoService {
                 .orElse(null);
     }
 
+    private long getPackagedObjectSize(String objectName) {
+        Long size = packagedObjectSizes.get(objectName);
+        if (size != null) {
+            return size;
+        }
+
+        try {
+            size = storageGuard.execute(StorageGuard.Operation.STAT,
+                    () -> minioService.getObjectSize(minioConfig.getBucketName(), objectName));
+        } catch (StorageUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new EntityNotFoundException("Packaged object not found: " + objectName);
+        }
+        packagedObjectSizes.put(objectName, size);
+        return size;
+    }
+
+    private byte[] readPackagedManifest(String objectName) {
+        try (InputStream is = storageGuard.openStream(StorageGuard.Operation.GET_RANGE,
+                () -> minioService.getObject(minioConfig.getBucketName(), objectName))) {
+            return is.readAllBytes();
+        } catch (StorageUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new EntityNotFoundException("Packaged object not found: " + objectName);
+        }
+    }
+
+    private String getPackagedContentType(String path) {
+        if (path.endsWith(".m3u8")) {
+            return "application/vnd.apple.mpegurl";
+        }
+        if (path.endsWith(".mpd")) {
+            return "application/dash+xml";
+        }
+        if (path.endsWith(".m4s")) {
+            return "video/iso.segment";
+        }
+        return "video/mp4";
+    }
+
     private int parseResolutionHeight(String resolution) {
         if (resolution.equals("4K")) {
             return 2160;
@@ -1,32 +1,62 @@
 package com.hapidzfadli.hflix.app.service.impl;
 
 import com.hapidzfadli.hflix.api.dto.ChunkUploadDTO;
-import com.hapidzfadli.hflix.api.dto.VideoDTO;
+import com.hapidzfadli.hflix.api.dto.UploadFinalizationDTO;
+import com.hapidzfadli.hflix.api.dto.UploadStatusDTO;
 import com.hapidzfadli.hflix.api.dto.VideoUploadResponseDTO;
 import com.hapidzfadli.hflix.app.service.MinioService;
+import com.hapidzfadli.hflix.app.service.UploadSessionService;
+import com.hapidzfadli.hflix.app.service.UploadValidationService;
 import com.hapidzfadli.hflix.app.service.UserService;
 import com.hapidzfadli.hflix.app.service.VideoEncodingService;
+import com.hapidzfadli.hflix.app.service.VideoProbeService;
 import com.hapidzfadli.hflix.app.service.VideoUploadService;
+import com.hapidzfadli.hflix.app.streaming.TransferBufferPool;
 import com.hapidzfadli.hflix.config.MinioConfig;
+import com.hapidzfadli.hflix.domain.entity.UploadChunk;
+import com.hapidzfadli.hflix.domain.entity.UploadSession;
 import com.hapidzfadli.hflix.domain.entity.User;
 import com.hapidzfadli.hflix.domain.entity.Video;
 import com.hapidzfadli.hflix.domain.repository.VideoRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
@@ -38,9 +68,51 @@ public class VideoUploadServiceImpl implements VideoUploadService {
     private final MinioService minioService;
     private final MinioConfig minioConfig;
     private final VideoEncodingService videoEncodingService;
+    private final VideoProbeService videoProbeService;
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final UploadSessionService uploadSessionService;
+    private final TransferBufferPool transferBufferPool;
+    private final UploadValidationService uploadValidationService;
 
-    private final Map<Long, Path> tempUploadDirs = new HashMap<>();
+    // S3 rejects parts below 5 MB, except for the last part of an upload
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final long PREFIX_POLL_INTERVAL_MS = 1000;
+    private static final long FINALIZATION_RENEW_INTERVAL_MS = 30_000;
+
+    @Value("${video.upload.mode}")
+    private String uploadMode;
+
+    @Value("${video.upload.presigned-url-expiry-seconds}")
+    private int presignedUrlExpirySeconds;
+
+    @Value("${video.upload.finalization-threads}")
+    private int finalizationThreads;
+
+    @Value("${video.upload.finalization-timeout-minutes}")
+    private long finalizationTimeoutMinutes;
+
+    @Value("${video.upload.prefix.enabled}")
+    private boolean prefixEnabled;
+
+    @Value("${video.upload.prefix.size}")
+    private long prefixSize;
+
+    private ExecutorService finalizationExecutor;
+
+    @PostConstruct
+    public void init() {
+        finalizationExecutor = Executors.newFixedThreadPool(Math.max(1, finalizationThreads), runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("upload-finalizer-" + thread.getId());
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Interrupted finalizations are left FINALIZING and can be claimed again once stale
+        finalizationExecutor.shutdownNow();
+    }
 
 
     @Override
@@ -60,27 +132,54 @@ public class VideoUploadServiceImpl implements VideoUploadService {
         video.setDescription(description);
         video.setFileSize(fileSize);
         video.setStatus(Video.Status.UPLOADING);
+        video.setS3Path(minioConfig.getOriginalPath() + "/" + user.getId() + "/" +
+                UUID.randomUUID() + "/" + filename);
 
         video = videoRepository.save(video);
 
         try {
-            Path tempDir = Files.createTempDirectory("video_upload_" + video.getId() + "_");
-            tempUploadDirs.put(video.getId(), tempDir);
-            log.info("Created temp directory for video {}: {}", video.getId(), tempDir);
+            if (isPresignedUpload()) {
+                return initializePresignedUpload(video);
+            }
+            if (isMultipartUpload()) {
+                String uploadId = minioService.createMultipartUpload(minioConfig.getBucketName(), video.getS3Path());
+                uploadSessionService.createSession(video, uploadId, null);
+                log.info("Started multipart upload for video {}: {}", video.getId(), uploadId);
+            } else {
+                Path tempDir = Files.createTempDirectory("video_upload_" + video.getId() + "_");
+                uploadSessionService.createSession(video, null, tempDir.toString());
+                log.info("Created temp directory for video {}: {}", video.getId(), tempDir);
+            }
 
             return VideoUploadResponseDTO.builder()
                     .videoId(video.getId())
                     .uploadUrl("/api/videos/upload/chunk?videoId=" + video.getId())
                     .maxChunkSize(5 * 1024 * 1024) // 5MB chunk size
+                    .resumable(true)
                     .build();
         } catch (Exception e) {
-            throw new RuntimeException("Failed to create temporary directory for upload", e);
+            throw new RuntimeException("Failed to start upload session", e);
         }
     }
 
     @Override
-    @Transactional
     public ChunkUploadDTO uploadChunk(String username, Long videoId, int chunkNumber, int totalChunks, MultipartFile chunk) {
+        try (InputStream body = chunk.getInputStream()) {
+            return uploadChunk(username, videoId, chunkNumber, totalChunks, body, chunk.getSize(), null);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read chunk", e);
+        }
+    }
+
+    /**
+     * Not transactional: the chunk is stored before its receipt is recorded, so no
+     * connection or row lock is held while the chunk body is transferred. The body is
+     * streamed to its destination through a single pooled buffer and hashed on the way,
+     * so memory use per chunk does not depend on chunk size.
+     */
+    @Override
+    public ChunkUploadDTO uploadChunk(String username, Long videoId, int chunkNumber, int totalChunks,
+                                      InputStream body, long size, String expectedSha256) {
         Video video = videoRepository.findById(videoId)
                 .orElseThrow(() -> new EntityNotFoundException("Video not found"));
 
@@ -92,34 +191,151 @@ public class VideoUploadServiceImpl implements VideoUploadService {
             throw new IllegalStateException("Video is not in UPLOADING state");
         }
 
-        Path tempDir = tempUploadDirs.get(videoId);
-        if (tempDir == null) {
-            throw new IllegalStateException("Upload session not found");
+        UploadSession session = uploadSessionService.getSession(videoId)
+                .orElseThrow(() -> new IllegalStateException("Upload session not found"));
+        if (session.getStatus() != UploadSession.Status.OPEN) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload is no longer accepting chunks");
+        }
+        if (session.isPresigned()) {
+            throw new IllegalArgumentException("Parts of this upload must be sent to their presigned URLs");
+        }
+
+        if (totalChunks < 1 || totalChunks > UploadSession.MAX_CHUNKS) {
+            throw new IllegalArgumentException("Total chunks must be between 1 and " + UploadSession.MAX_CHUNKS);
+        }
+        if (chunkNumber < 0 || chunkNumber >= totalChunks) {
+            throw new IllegalArgumentException("Chunk number must be between 0 and " + (totalChunks - 1));
+        }
+        if (session.getTotalChunks() != null && session.getTotalChunks() != totalChunks) {
+            throw new IllegalArgumentException("Upload was started with " + session.getTotalChunks() +
+                    " chunks, not " + totalChunks);
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException("Chunk is empty");
+        }
+        // Rejected before the body is read; a concurrent duplicate is caught again when its receipt is recorded
+        if (uploadSessionService.isReceived(session, chunkNumber)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Chunk " + chunkNumber + " has already been received");
+        }
+        // The first chunk carries the container header, which is validated before any other data is accepted
+        if (chunkNumber != 0 && !uploadSessionService.isReceived(session, 0)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Chunk 0 must be uploaded first");
         }
 
         try {
-            Path chunkFile = tempDir.resolve(String.format("%05d", chunkNumber));
-            try (FileOutputStream fos = new FileOutputStream(chunkFile.toFile())) {
-                fos.write(chunk.getBytes());
+            MessageDigest digest = newSha256();
+            String partETag = null;
+            Path chunkFile = null;
+            boolean prefixChunk = uploadSessionService.isPrefixChunk(session, chunkNumber);
+
+            if (chunkNumber == 0) {
+                byte[] header = body.readNBytes((int) Math.min(size, uploadValidationService.getHeaderLength()));
+                try {
+                    uploadValidationService.validateHeader(video.getOriginalFilename(), header);
+                } catch (IllegalArgumentException e) {
+                    rejectUpload(video, session, null, e.getMessage());
+                    throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, e.getMessage());
+                }
+                if (prefixEnabled && uploadValidationService.isFastStart(header)) {
+                    // Later chunks are the size of the first one, except possibly the last
+                    int prefixChunks = (int) Math.max(1, (prefixSize + size - 1) / size);
+                    uploadSessionService.enablePrefixStage(videoId, prefixChunks);
+                    prefixChunk = true;
+                }
+                body = new SequenceInputStream(new ByteArrayInputStream(header), body);
             }
 
-            log.info("Saved chunk {} of {} for video {}", chunkNumber, totalChunks, videoId);
+            if (session.getMultipartUploadId() != null) {
+                if (size < MIN_PART_SIZE && chunkNumber < totalChunks - 1) {
+                    throw new IllegalArgumentException("Only the last chunk may be smaller than " + MIN_PART_SIZE + " bytes");
+                }
+                InputStream is = new DigestInputStream(body, digest);
+                if (prefixChunk) {
+                    // Also kept as an object of its own, so the prefix stage can read it before the upload is assembled
+                    String prefixKey = getPrefixChunkKey(video.getS3Path(), chunkNumber);
+                    minioService.uploadStream(minioConfig.getBucketName(), prefixKey, is, size);
+                    partETag = minioService.copyPart(minioConfig.getBucketName(), prefixKey, video.getS3Path(),
+                            session.getMultipartUploadId(), chunkNumber + 1);
+                } else {
+                    // Streamed straight into the multipart upload as part chunkNumber + 1
+                    partETag = minioService.uploadPart(minioConfig.getBucketName(), video.getS3Path(),
+                            session.getMultipartUploadId(), chunkNumber + 1, is, size);
+                }
+            } else {
+                chunkFile = getTempDirectory(session).resolve(String.format("%05d", chunkNumber));
+                long written = writeChunkFile(new DigestInputStream(body, digest), chunkFile);
+                if (written != size) {
+                    Files.deleteIfExists(chunkFile);
+                    throw new IllegalArgumentException("Chunk has " + written + " bytes, expected " + size);
+                }
+            }
+
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(sha256)) {
+                // Not recorded, so the client can send the chunk again; a re-sent part replaces this one
+                if (chunkFile != null) {
+                    Files.deleteIfExists(chunkFile);
+                }
+                throw new IllegalArgumentException("Checksum mismatch for chunk " + chunkNumber);
+            }
+
+            session = uploadSessionService.recordChunk(videoId, chunkNumber, totalChunks, partETag, sha256, size);
+
+            log.info("Stored chunk {} of {} for video {}, {} received", chunkNumber, totalChunks, videoId,
+                    session.getReceivedCount());
+
+            if (uploadSessionService.isPrefixReady(session) && uploadSessionService.claimPrefixStage(session)) {
+                Long sessionId = session.getId();
+                finalizationExecutor.execute(() -> processPrefix(videoId, sessionId));
+                log.info("Leading {} chunks of video {} received, starting on its prefix", session.getPrefixChunks(), videoId);
+            }
 
             return ChunkUploadDTO.builder()
                     .videoId(videoId)
                     .chunkNumber(chunkNumber)
                     .received(true)
-                    .nextExpectedChunk(chunkNumber + 1)
+                    .nextExpectedChunk(uploadSessionService.getNextMissingChunk(session))
+                    .totalChunks(totalChunks)
+                    .receivedCount(session.getReceivedCount())
+                    .missingRanges(uploadSessionService.getMissingRanges(session))
                     .build();
 
-        } catch (IOException e) {
+        } catch (IllegalArgumentException | IllegalStateException | ResponseStatusException e) {
+            throw e;
+        } catch (Exception e) {
             throw new RuntimeException("Failed to save chunk", e);
         }
     }
 
     @Override
-    @Transactional
-    public VideoDTO completeUpload(String username, Long videoId){
+    @Transactional(readOnly = true)
+    public UploadStatusDTO getUploadStatus(String username, Long videoId) {
+        Video video = videoRepository.findById(videoId)
+                .orElseThrow(() -> new EntityNotFoundException("Video not found"));
+
+        if (!video.getUser().getUsername().equals(username)) {
+            throw new IllegalArgumentException("You don't have permission to view this upload");
+        }
+
+        UploadSession session = uploadSessionService.getSession(videoId)
+                .orElseThrow(() -> new EntityNotFoundException("Upload session not found"));
+
+        return UploadStatusDTO.builder()
+                .videoId(videoId)
+                .totalChunks(session.getTotalChunks())
+                .receivedCount(session.getReceivedCount())
+                .receivedChunks(uploadSessionService.getReceivedChunks(session))
+                .missingRanges(uploadSessionService.getMissingRanges(session))
+                .build();
+    }
+
+    /**
+     * Claims the upload for finalization and returns immediately. The chunks are assembled
+     * and handed to encoding on a background thread, so neither the request thread nor a
+     * database connection is held while multi-gigabyte originals are moved around.
+     */
+    @Override
+    public UploadFinalizationDTO completeUpload(String username, Long videoId){
         Video video = videoRepository.findById(videoId)
                 .orElseThrow(() -> new EntityNotFoundException("Video not found"));
 
@@ -131,37 +347,467 @@ public class VideoUploadServiceImpl implements VideoUploadService {
             throw new IllegalStateException("Video is not in UPLOADING state");
         }
 
-        Path tempDir = tempUploadDirs.get(videoId);
-        if (tempDir == null) {
-            throw new IllegalStateException("Upload session not found");
+        UploadSession session = uploadSessionService.getSession(videoId)
+                .orElseThrow(() -> new IllegalStateException("Upload session not found"));
+        if (session.isPresigned()) {
+            session = recordPresignedParts(video, session);
+        }
+        if (!uploadSessionService.isComplete(session)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, session.getTotalChunks() == null
+                    ? "No chunks have been received"
+                    : "Upload is missing chunks " + String.join(", ", uploadSessionService.getMissingRanges(session)));
+        }
+        if (session.getMultipartUploadId() == null) {
+            // Staged chunks are only readable here, so a LOCAL upload must be finalized on this node
+            getTempDirectory(session);
+        }
+
+        String finalizationId = UUID.randomUUID().toString();
+        LocalDateTime staleBefore = LocalDateTime.now().minusMinutes(finalizationTimeoutMinutes);
+        if (!uploadSessionService.claimFinalization(session, finalizationId, staleBefore)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload is already being finalized");
+        }
+
+        Long sessionId = session.getId();
+        finalizationExecutor.execute(() -> finalizeUpload(videoId, sessionId, finalizationId));
+        log.info("Queued finalization {} for video {}", finalizationId, videoId);
+
+        return UploadFinalizationDTO.builder()
+                .jobId(finalizationId)
+                .videoId(videoId)
+                .status(UploadSession.Status.FINALIZING.name())
+                .step(UploadSession.FinalizationStep.QUEUED.name())
+                .videoStatus(video.getStatus().name())
+                .build();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public UploadFinalizationDTO getFinalizationStatus(String username, String jobId) {
+        UploadSession session = uploadSessionService.getSessionByFinalizationId(jobId)
+                .orElseThrow(() -> new EntityNotFoundException("Finalization job not found"));
+        Video video = session.getVideo();
+
+        if (!video.getUser().getUsername().equals(username)) {
+            throw new IllegalArgumentException("You don't have permission to view this upload");
         }
 
+        return UploadFinalizationDTO.builder()
+                .jobId(jobId)
+                .videoId(video.getId())
+                .status(session.getStatus().name())
+                .step(session.getFinalizationStep() != null ? session.getFinalizationStep().name() : null)
+                .error(session.getErrorMessage())
+                .videoStatus(video.getStatus().name())
+                .build();
+    }
 
+    /**
+     * Runs on the finalization executor. Not transactional: every step that writes to the
+     * database does so in its own short transaction, and the session's current step is
+     * recorded as it goes for the status endpoint. Each of those writes is fenced by the
+     * finalization ID: once a retry has taken the session over, this finalizer stops at its
+     * next step rather than probing and encoding the upload a second time.
+     */
+    private void finalizeUpload(Long videoId, Long sessionId, String finalizationId) {
+        boolean processing = false;
         try {
-            Path combinedFile = tempDir.resolve("combined.mp4");
-            combineChunks(tempDir, combinedFile);
+            awaitPrefixStage(sessionId, finalizationId);
+
+            Video video = videoRepository.findById(videoId)
+                    .orElseThrow(() -> new EntityNotFoundException("Video not found"));
+            UploadSession session = uploadSessionService.getSession(videoId)
+                    .orElseThrow(() -> new IllegalStateException("Upload session not found"));
+            String uploadId = session.getMultipartUploadId();
+            String objectName = video.getS3Path();
+            Path tempDir = uploadId == null ? getTempDirectory(session) : null;
+
+            updateStep(sessionId, finalizationId, UploadSession.FinalizationStep.HASHING);
+            List<UploadChunk> chunks = uploadSessionService.getChunks(session);
+            video.setContentHash(getContentHash(videoId, chunks));
+            video.setEncodingProfile(videoEncodingService.getEncodingProfile());
+
+            Optional<Video> duplicate = video.getContentHash() == null ? Optional.empty()
+                    : videoRepository.findFirstByContentHashAndEncodingProfileAndStatus(
+                            video.getContentHash(), video.getEncodingProfile(), Video.Status.READY);
+
+            if (duplicate.isPresent()) {
+                if (!uploadSessionService.renewFinalization(sessionId, finalizationId)) {
+                    throw new FinalizationSupersededException(finalizationId);
+                }
+                if (uploadId != null) {
+                    // The parts are never assembled into an object of their own
+                    abortMultipartUploadQuietly(video.getS3Path(), uploadId);
+                }
+                // Identical content already encoded with the same settings: share its original and renditions
+                video.setS3Path(duplicate.get().getS3Path());
+                videoEncodingService.reuseEncodedFormats(video, duplicate.get());
+            } else {
+                if (uploadId != null) {
+                    updateStep(sessionId, finalizationId, UploadSession.FinalizationStep.ASSEMBLING);
+                    if (!objectExists(video.getS3Path())) { // a retried finalization may have assembled it already
+                        Map<Integer, String> partETags = new TreeMap<>();
+                        chunks.forEach(chunk -> partETags.put(chunk.getChunkNumber() + 1, chunk.getPartETag()));
+                        minioService.completeMultipartUpload(minioConfig.getBucketName(), video.getS3Path(), uploadId, partETags);
+                    }
+                } else {
+                    updateStep(sessionId, finalizationId, UploadSession.FinalizationStep.COMBINING);
+                    Path combinedFile = tempDir.resolve("combined.mp4");
+                    combineChunks(tempDir, combinedFile);
+                    updateStep(sessionId, finalizationId, UploadSession.FinalizationStep.UPLOADING);
+                    minioService.uploadFile(minioConfig.getBucketName(), video.getS3Path(), combinedFile.toFile());
+                }
+
+                if (session.isPresigned() && !validateStoredHeader(video, session, finalizationId)) {
+                    return;
+                }
+
+                updateStep(sessionId, finalizationId, UploadSession.FinalizationStep.PROBING);
+                videoProbeService.probeSource(video);
+                video.setStatus(Video.Status.PROCESSING);
+                video = videoRepository.save(video);
+                processing = true;
+
+                updateStep(sessionId, finalizationId, UploadSession.FinalizationStep.STARTING_ENCODING);
+                videoEncodingService.startEncodingJob(video);
+                if (video.getThumbnailPath() == null) {
+                    videoEncodingService.generateThumbnail(video);
+                }
+            }
 
-            String s3Key = minioConfig.getOriginalPath() + "/" + video.getUser().getId() + "/" +
-                    UUID.randomUUID() + "/" + video.getOriginalFilename();
+            if (tempDir != null) {
+                deleteTempDirectory(tempDir);
+            }
+            if (uploadId != null && session.getPrefixChunks() != null) {
+                deletePrefixChunksQuietly(objectName, session.getPrefixChunks());
+            }
+            if (!uploadSessionService.completeFinalization(sessionId, finalizationId)) {
+                throw new FinalizationSupersededException(finalizationId);
+            }
+            log.info("Finalized upload of video {}", videoId);
 
-            minioService.uploadFile(minioConfig.getBucketName(), s3Key, combinedFile.toFile());
+        } catch (FinalizationSupersededException e) {
+            log.warn("Finalization {} of video {} was taken over by a retry, stopping", finalizationId, videoId);
+        } catch (Exception e) {
+            log.error("Failed to finalize upload of video {}", videoId, e);
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            if (!uploadSessionService.updateFinalization(sessionId, finalizationId, UploadSession.Status.FAILED, null,
+                    error.length() > 1024 ? error.substring(0, 1024) : error)) {
+                log.warn("Finalization {} of video {} was taken over by a retry", finalizationId, videoId);
+            } else if (processing) {
+                // Past the point of retrying the upload: the video is no longer accepting completion
+                videoRepository.findById(videoId).ifPresent(video -> {
+                    video.setStatus(Video.Status.ERROR);
+                    videoRepository.save(video);
+                });
+            }
+        }
+    }
 
-            video.setS3Path(s3Key);
-            video.setStatus(Video.Status.PROCESSING);
+    /**
+     * Runs on the finalization executor while the rest of the upload is still arriving. The
+     * prefix of a faststart file holds its complete moov box, so probing it yields the
+     * duration and dimensions of the whole file; the poster frame is taken from within the
+     * prefix, and the lowest renditions start encoding on it. A failure here only costs the
+     * head start: finalization probes and encodes the complete file as usual.
+     */
+    private void processPrefix(Long videoId, Long sessionId) {
+        boolean succeeded = false;
+        try {
+            Video video = videoRepository.findById(videoId)
+                    .orElseThrow(() -> new EntityNotFoundException("Video not found"));
+            UploadSession session = uploadSessionService.getSession(videoId)
+                    .orElseThrow(() -> new IllegalStateException("Upload session not found"));
+            int prefixChunks = session.getPrefixChunks();
+
+            String input = getPrefixInput(video, session);
+            if (!videoProbeService.probeSource(video, input)) {
+                return;
+            }
             video = videoRepository.save(video);
 
-            videoEncodingService.startEncodingJob(video);
+            long prefixBytes = uploadSessionService.getChunks(session).stream()
+                    .filter(chunk -> chunk.getChunkNumber() < prefixChunks)
+                    .mapToLong(UploadChunk::getSize)
+                    .sum();
+            // The probed rate may leave out audio and overhead, so only the first half of the estimate is relied on
+            double prefixSeconds = video.getSourceBitrate() != null && video.getSourceBitrate() > 0
+                    ? prefixBytes * 8.0 / video.getSourceBitrate() : 0;
+            videoEncodingService.generateThumbnail(video, input, prefixSeconds / 2);
+
+            videoEncodingService.startPrefixEncoding(video, input);
+            succeeded = true;
+            log.info("Processed the {} byte prefix of video {}", prefixBytes, videoId);
 
-            Files.walk(tempDir)
+        } catch (Exception e) {
+            log.warn("Prefix stage failed for video {}; it is processed once the upload completes", videoId, e);
+        } finally {
+            uploadSessionService.completePrefixStage(sessionId, succeeded);
+        }
+    }
+
+    /**
+     * Returns an ffmpeg input that reads the prefix chunks back to back: the staged files of a
+     * LOCAL upload, or presigned URLs of the prefix objects of a MULTIPART upload.
+     */
+    private String getPrefixInput(Video video, UploadSession session) throws Exception {
+        List<String> parts = new ArrayList<>(session.getPrefixChunks());
+        for (int i = 0; i < session.getPrefixChunks(); i++) {
+            if (session.getMultipartUploadId() != null) {
+                parts.add(minioService.getPresignedUrl(minioConfig.getBucketName(),
+                        getPrefixChunkKey(video.getS3Path(), i), presignedUrlExpirySeconds));
+            } else {
+                parts.add(getTempDirectory(session).resolve(String.format("%05d", i)).toString());
+            }
+        }
+        return "concat:" + String.join("|", parts);
+    }
+
+    /**
+     * The prefix stage writes probe results and the poster frame to the same video, so
+     * finalization waits for it unless it has run for longer than the finalization timeout.
+     * The wait can last that long itself, so the finalization is renewed while it waits;
+     * otherwise a retry would take it over as abandoned.
+     */
+    private void awaitPrefixStage(Long sessionId, String finalizationId) throws InterruptedException {
+        long renewedAt = System.currentTimeMillis();
+        while (uploadSessionService.isPrefixStageRunning(sessionId,
+                LocalDateTime.now().minusMinutes(finalizationTimeoutMinutes))) {
+            Thread.sleep(PREFIX_POLL_INTERVAL_MS);
+
+            if (System.currentTimeMillis() - renewedAt >= FINALIZATION_RENEW_INTERVAL_MS) {
+                if (!uploadSessionService.renewFinalization(sessionId, finalizationId)) {
+                    throw new FinalizationSupersededException(finalizationId);
+                }
+                renewedAt = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private String getPrefixChunkKey(String objectName, int chunkNumber) {
+        return objectName.substring(0, objectName.lastIndexOf('/')) + "/prefix/" + String.format("%05d", chunkNumber);
+    }
+
+    private void deletePrefixChunksQuietly(String objectName, int prefixChunks) {
+        for (int i = 0; i < prefixChunks; i++) {
+            try {
+                minioService.deleteObject(minioConfig.getBucketName(), getPrefixChunkKey(objectName, i));
+            } catch (Exception e) {
+                log.warn("Could not delete prefix chunk {} of {}", i, objectName, e);
+            }
+        }
+    }
+
+    /**
+     * Presigned parts never pass through this service, so their container header can only be
+     * checked once the object is assembled, before it is probed or encoded.
+     */
+    private boolean validateStoredHeader(Video video, UploadSession session, String finalizationId) throws Exception {
+        long length = Math.min(video.getFileSize(), uploadValidationService.getHeaderLength());
+        byte[] header;
+        try (InputStream is = minioService.getObjectRange(minioConfig.getBucketName(), video.getS3Path(), 0, length)) {
+            header = is.readAllBytes();
+        }
+
+        try {
+            uploadValidationService.validateHeader(video.getOriginalFilename(), header);
+            return true;
+        } catch (IllegalArgumentException e) {
+            rejectUpload(video, session, finalizationId, e.getMessage());
+            minioService.deleteObject(minioConfig.getBucketName(), video.getS3Path());
+            return false;
+        }
+    }
+
+    /**
+     * Closes the session to further chunks and discards what was stored so far. The video is
+     * marked as failed so the user sees why the upload did not go through.
+     *
+     * @param finalizationId The finalization rejecting the upload, or null while chunks are still arriving.
+     */
+    private void rejectUpload(Video video, UploadSession session, String finalizationId, String reason) {
+        log.warn("Rejecting upload of video {}: {}", video.getId(), reason);
+
+        if (finalizationId == null) {
+            uploadSessionService.rejectSession(session.getId(), reason);
+        } else if (!uploadSessionService.updateFinalization(session.getId(), finalizationId,
+                UploadSession.Status.REJECTED, null, reason)) {
+            throw new FinalizationSupersededException(finalizationId);
+        }
+
+        if (session.getMultipartUploadId() != null) {
+            abortMultipartUploadQuietly(video.getS3Path(), session.getMultipartUploadId());
+        } else if (session.getTempDirectory() != null) {
+            try {
+                deleteTempDirectory(Path.of(session.getTempDirectory()));
+            } catch (IOException e) {
+                log.warn("Could not delete staged chunks of video {}", video.getId(), e);
+            }
+        }
+
+        video.setStatus(Video.Status.ERROR);
+        videoRepository.save(video);
+    }
+
+    private void deleteTempDirectory(Path tempDir) throws IOException {
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder())
                     .map(Path::toFile)
                     .forEach(File::delete);
-            tempDir.toFile().delete();
-            tempUploadDirs.remove(videoId);
+        }
+    }
 
-            return VideoDTO.fromVideo(video);
+    private void updateStep(Long sessionId, String finalizationId, UploadSession.FinalizationStep step) {
+        if (!uploadSessionService.updateFinalization(sessionId, finalizationId, UploadSession.Status.FINALIZING, step, null)) {
+            throw new FinalizationSupersededException(finalizationId);
+        }
+    }
 
+    private boolean objectExists(String objectName) {
+        try {
+            minioService.getObjectSize(minioConfig.getBucketName(), objectName);
+            return true;
         } catch (Exception e) {
-            throw new RuntimeException("Failed to complete upload", e);
+            return false;
+        }
+    }
+
+    private void abortMultipartUploadQuietly(String objectName, String uploadId) {
+        try {
+            minioService.abortMultipartUpload(minioConfig.getBucketName(), objectName, uploadId);
+        } catch (Exception e) {
+            log.warn("Could not abort multipart upload {} for {}", uploadId, objectName, e);
+        }
+    }
+
+    private long writeChunkFile(InputStream in, Path chunkFile) throws IOException {
+        byte[] buffer = transferBufferPool.acquire();
+        try (FileChannel channel = FileChannel.open(chunkFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long written = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                ByteBuffer view = ByteBuffer.wrap(buffer, 0, read);
+                while (view.hasRemaining()) {
+                    written += channel.write(view);
+                }
+            }
+            return written;
+        } finally {
+            transferBufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Starts a multipart upload whose parts the client sends straight to object storage.
+     * The file is split into parts of the minimum part size, and every part gets its own
+     * presigned PUT URL; no upload bytes pass through this service.
+     */
+    private VideoUploadResponseDTO initializePresignedUpload(Video video) throws Exception {
+        if (video.getFileSize() <= 0) {
+            throw new IllegalArgumentException("File size is required for presigned uploads");
+        }
+        int totalChunks = (int) ((video.getFileSize() + MIN_PART_SIZE - 1) / MIN_PART_SIZE);
+
+        String uploadId = minioService.createMultipartUpload(minioConfig.getBucketName(), video.getS3Path());
+        uploadSessionService.createPresignedSession(video, uploadId, totalChunks);
+
+        List<String> partUrls = new ArrayList<>(totalChunks);
+        for (int part = 1; part <= totalChunks; part++) {
+            partUrls.add(minioService.getPresignedPartUrl(minioConfig.getBucketName(), video.getS3Path(),
+                    uploadId, part, presignedUrlExpirySeconds));
+        }
+        log.info("Started presigned multipart upload for video {} with {} parts: {}", video.getId(), totalChunks, uploadId);
+
+        return VideoUploadResponseDTO.builder()
+                .videoId(video.getId())
+                .maxChunkSize((int) MIN_PART_SIZE)
+                .resumable(true)
+                .totalChunks(totalChunks)
+                .partUrls(partUrls)
+                .build();
+    }
+
+    /**
+     * Lists the parts the client has uploaded and records them as received chunks, so the
+     * usual completeness check applies. Parts outside the announced range and a total size
+     * different from the announced file size are rejected.
+     */
+    private UploadSession recordPresignedParts(Video video, UploadSession session) {
+        List<MinioService.UploadedPart> parts;
+        try {
+            parts = minioService.listParts(minioConfig.getBucketName(), video.getS3Path(), session.getMultipartUploadId());
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to list uploaded parts", e);
+        }
+
+        List<UploadChunk> chunks = new ArrayList<>(parts.size());
+        long totalSize = 0;
+        for (MinioService.UploadedPart part : parts) {
+            if (part.partNumber() < 1 || part.partNumber() > session.getTotalChunks()) {
+                throw new IllegalArgumentException("Unexpected part " + part.partNumber() + " in upload");
+            }
+            UploadChunk chunk = new UploadChunk();
+            chunk.setChunkNumber(part.partNumber() - 1);
+            chunk.setPartETag(part.eTag());
+            chunk.setSize(part.size());
+            chunks.add(chunk);
+            totalSize += part.size();
+        }
+
+        session = uploadSessionService.recordChunks(video.getId(), chunks);
+        if (uploadSessionService.isComplete(session) && totalSize != video.getFileSize()) {
+            throw new IllegalArgumentException("Uploaded parts total " + totalSize + " bytes, expected " + video.getFileSize());
+        }
+        return session;
+    }
+
+    private boolean isPresignedUpload() {
+        return "PRESIGNED".equalsIgnoreCase(uploadMode);
+    }
+
+    private boolean isMultipartUpload() {
+        return "MULTIPART".equalsIgnoreCase(uploadMode);
+    }
+
+    /**
+     * Staged chunks only exist on the node that created the session, so LOCAL uploads
+     * must keep sending to that node; MULTIPART uploads can be served by any node.
+     */
+    private Path getTempDirectory(UploadSession session) {
+        Path tempDir = Path.of(session.getTempDirectory());
+        if (!Files.isDirectory(tempDir)) {
+            throw new IllegalStateException("Upload session is staged on another node");
+        }
+        return tempDir;
+    }
+
+    /**
+     * Returns the SHA-256 over the SHA-256 of every chunk in chunk order. Chunks can be hashed
+     * as they arrive, in any order and on any node; identical files uploaded with the same
+     * chunk size produce the same hash.
+     */
+    private String getContentHash(Long videoId, List<UploadChunk> chunks) {
+        if (chunks.isEmpty()) {
+            return null;
+        }
+
+        // A hash over only some of the chunks could match a different, shorter file
+        if (chunks.stream().anyMatch(chunk -> chunk.getSha256() == null)) {
+            log.warn("Chunk hashes missing for video {}, skipping duplicate detection", videoId);
+            return null;
+        }
+
+        MessageDigest digest = newSha256();
+        chunks.forEach(chunk -> digest.update(HexFormat.of().parseHex(chunk.getSha256())));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
 
@@ -179,4 +825,13 @@ public class VideoUploadServiceImpl implements VideoUploadService {
                     });
         }
     }
+
+    /**
+     * Thrown inside a finalizer once a retry has taken its session over.
+     */
+    private static class FinalizationSupersededException extends RuntimeException {
+        private FinalizationSupersededException(String finalizationId) {
+            super("Finalization " + finalizationId + " has been superseded");
+        }
+    }
 }
@@ -0,0 +1,286 @@
+package com.hapidzfadli.hflix.app.streaming;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * DiskBlockStore
+ *
+ * Purpose: Read-through cache of fixed-size, block-aligned slices of encoded
+ * renditions on the node's local disk. Blocks are keyed by object path plus
+ * block index, evicted in LRU order once the configured disk budget is
+ * exceeded, and handed out as open {@link FileChannel}s so callers can use
+ * {@code transferTo} instead of copying through the heap.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DiskBlockStore {
+
+    private static final String BLOCK_SUFFIX = ".blk";
+
+    @Value("${video.cache.disk.directory}")
+    private String directory;
+
+    @Value("${video.cache.disk.max-size}")
+    private long maxSize;
+
+    private final MeterRegistry meterRegistry;
+
+    private Path root;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Long> blocks = new LinkedHashMap<>(1024, 0.75f, true);
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long residentBytes;
+
+    /**
+     * Supplies the bytes of a block from the origin when it is not cached.
+     */
+    @FunctionalInterface
+    public interface BlockLoader {
+        InputStream open(long start, long end) throws Exception;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(directory);
+        Files.createDirectories(root);
+
+        // Rebuild the index from blocks left behind by a previous run, oldest first
+        List<Path> existing = new ArrayList<>();
+        try (Stream<Path> files = Files.list(root)) {
+            files.forEach(existing::add);
+        }
+        existing.sort(Comparator.comparingLong(file -> file.toFile().lastModified()));
+
+        for (Path file : existing) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(BLOCK_SUFFIX)) {
+                register(name, Files.size(file));
+            } else {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        FunctionCounter.builder("hflix.stream.cache.disk.hits", hits, LongAdder::sum)
+                .register(meterRegistry);
+        FunctionCounter.builder("hflix.stream.cache.disk.misses", misses, LongAdder::sum)
+                .register(meterRegistry);
+        Gauge.builder("hflix.stream.cache.disk.resident.bytes", this, DiskBlockStore::getResidentBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        log.info("Disk block cache at {} holds {} bytes (budget {})", root, residentBytes, maxSize);
+    }
+
+    /**
+     * Opens a cached block for reading, loading it from the origin on a miss.
+     * Concurrent misses for the same block share a single origin request.
+     *
+     * @param objectName The object the block belongs to.
+     * @param blockIndex The zero-based index of the block within the object.
+     * @param blockStart The first byte of the block within the object.
+     * @param blockEnd The byte after the last byte of the block within the object.
+     * @param loader Opens the origin stream for the block range.
+     * @return A read-only channel positioned at the start of the block.
+     */
+    public FileChannel openBlock(String objectName, long blockIndex, long blockStart, long blockEnd,
+                                 BlockLoader loader) throws IOException {
+        String name = blockName(objectName, blockIndex);
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            if (touch(name)) {
+                try {
+                    FileChannel channel = FileChannel.open(root.resolve(name), StandardOpenOption.READ);
+                    hits.increment();
+                    return channel;
+                } catch (NoSuchFileException e) {
+                    // Evicted between lookup and open, fall through to a reload
+                    forget(name);
+                }
+            }
+
+            CompletableFuture<Path> pending = new CompletableFuture<>();
+            CompletableFuture<Path> existing = inFlight.putIfAbsent(name, pending);
+
+            misses.increment();
+            Path path;
+            if (existing != null) {
+                path = await(existing);
+            } else {
+                try {
+                    path = load(name, blockStart, blockEnd, loader);
+                    pending.complete(path);
+                } catch (IOException e) {
+                    pending.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    inFlight.remove(name);
+                }
+            }
+
+            try {
+                return FileChannel.open(path, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                forget(name);
+            }
+        }
+
+        throw new IOException("Unable to open cached block " + name);
+    }
+
+    /**
+     * Tells whether a block is cached, without counting as an access for eviction.
+     *
+     * @param objectName The object the block belongs to.
+     * @param blockIndex The zero-based index of the block within the object.
+     * @return True if the block is on disk.
+     */
+    public boolean contains(String objectName, long blockIndex) {
+        String name = blockName(objectName, blockIndex);
+        lock.lock();
+        try {
+            return blocks.containsKey(name);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getResidentBytes() {
+        lock.lock();
+        try {
+            return residentBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path load(String name, long blockStart, long blockEnd, BlockLoader loader) throws IOException {
+        Path target = root.resolve(name);
+        Path temp = root.resolve(name + "." + UUID.randomUUID() + ".tmp");
+
+        try (InputStream is = loader.open(blockStart, blockEnd)) {
+            // An origin stream that ends early must not be cached as the whole block
+            long written = Files.copy(is, temp, StandardCopyOption.REPLACE_EXISTING);
+            if (written != blockEnd - blockStart) {
+                throw new IOException("Origin returned " + written + " of " + (blockEnd - blockStart)
+                        + " bytes for block " + name);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        } catch (Exception e) {
+            Files.deleteIfExists(temp);
+            throw new IOException("Failed to load block " + name + " from origin", e);
+        }
+
+        register(name, blockEnd - blockStart);
+        return target;
+    }
+
+    private void register(String name, long size) throws IOException {
+        List<String> evicted = new ArrayList<>();
+
+        lock.lock();
+        try {
+            Long previous = blocks.put(name, size);
+            residentBytes += size - (previous != null ? previous : 0);
+
+            Iterator<Map.Entry<String, Long>> it = blocks.entrySet().iterator();
+            while (residentBytes > maxSize && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                if (eldest.getKey().equals(name)) {
+                    continue;
+                }
+                residentBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                it.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (String victim : evicted) {
+            Files.deleteIfExists(root.resolve(victim));
+        }
+    }
+
+    private boolean touch(String name) {
+        lock.lock();
+        try {
+            return blocks.get(name) != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void forget(String name) {
+        lock.lock();
+        try {
+            Long size = blocks.remove(name);
+            if (size != null) {
+                residentBytes -= size;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path await(CompletableFuture<Path> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to load block", e.getCause());
+        }
+    }
+
+    private String blockName(String objectName, long blockIndex) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(objectName.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash) + "_" + blockIndex + BLOCK_SUFFIX;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
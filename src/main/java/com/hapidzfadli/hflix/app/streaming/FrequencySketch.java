@@ -0,0 +1,69 @@
+package com.hapidzfadli.hflix.app.streaming;
+
+/**
+ * FrequencySketch
+ *
+ * Purpose: Approximate, aging popularity counter used for TinyLFU admission.
+ * A count-min sketch with four rows of small saturating counters; all counters
+ * are halved once the number of recorded accesses reaches the sample size, so
+ * old popularity fades and recent traffic dominates.
+ *
+ * Updates are deliberately unsynchronized. A lost increment under contention
+ * only makes the estimate slightly lower, which admission tolerates.
+ */
+class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0xa4c4e1a3, 0x8e6b2f6d, 0xd1b54a35};
+
+    private final int[][] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+        int width = Integer.highestOneBit(Math.max(64, expectedEntries * 8) - 1) << 1;
+        this.table = new int[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = width * 10;
+    }
+
+    void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i);
+            if (table[i][index] < MAX_COUNT) {
+                table[i][index]++;
+                added = true;
+            }
+        }
+
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, table[i][indexOf(hash, i)]);
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        for (int[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>>= 1;
+            }
+        }
+        additions = sampleSize / 2;
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 17;
+        return h & mask;
+    }
+}
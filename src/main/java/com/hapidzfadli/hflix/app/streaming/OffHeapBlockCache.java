@@ -0,0 +1,289 @@
+package com.hapidzfadli.hflix.app.streaming;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * OffHeapBlockCache
+ *
+ * Purpose: In-memory tier in front of the disk block cache for the hottest
+ * parts of trending renditions. Block bytes live in a preallocated direct
+ * memory slab, so the byte budget is hard and the blocks never touch the heap.
+ *
+ * The index is split into independently locked LRU stripes so request threads
+ * only contend when they hit the same stripe. When the slab is full, a new block
+ * is admitted only if the frequency sketch rates it more popular than the LRU
+ * victim it would replace (TinyLFU), which keeps one-off scans from flushing
+ * hot blocks.
+ */
+@Slf4j
+@Component
+public class OffHeapBlockCache {
+
+    private static final int MAX_ARENA_BYTES = Integer.MAX_VALUE;
+
+    private final boolean enabled;
+    private final int slotSize;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final FrequencySketch sketch;
+    private final Queue<ByteBuffer> freeSlots = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final AtomicLong residentBytes = new AtomicLong();
+
+    public OffHeapBlockCache(@Value("${video.cache.memory.enabled}") boolean enabled,
+                             @Value("${video.cache.memory.max-size}") long maxSize,
+                             @Value("${video.cache.memory.stripes}") int stripeCount,
+                             @Value("${video.cache.block-size}") int blockSize,
+                             MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.slotSize = blockSize;
+
+        int slots = enabled ? (int) (maxSize / blockSize) : 0;
+        allocateSlab(slots);
+
+        int stripesPow2 = Integer.highestOneBit(Math.max(1, stripeCount) - 1) << 1;
+        this.stripes = new Stripe[Math.max(1, stripesPow2)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.stripeMask = stripes.length - 1;
+        this.sketch = new FrequencySketch(Math.max(slots, 1));
+
+        FunctionCounter.builder("hflix.stream.cache.memory.hits", hits, LongAdder::sum)
+                .description("Block reads served from the off-heap cache")
+                .register(meterRegistry);
+        FunctionCounter.builder("hflix.stream.cache.memory.misses", misses, LongAdder::sum)
+                .description("Block reads that fell through to the disk cache")
+                .register(meterRegistry);
+        FunctionCounter.builder("hflix.stream.cache.memory.rejections", rejections, LongAdder::sum)
+                .description("Blocks refused by the admission policy")
+                .register(meterRegistry);
+        Gauge.builder("hflix.stream.cache.memory.hit.ratio", this, OffHeapBlockCache::getHitRatio)
+                .register(meterRegistry);
+        Gauge.builder("hflix.stream.cache.memory.resident.bytes", residentBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        log.info("Off-heap block cache {} with {} slots of {} bytes",
+                enabled ? "enabled" : "disabled", slots, blockSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Looks up a block and pins it for reading. The caller must {@link Block#release()}
+     * the returned block once it has finished copying from it.
+     *
+     * @param key The block key.
+     * @return The pinned block, or null on a miss.
+     */
+    public Block get(String key) {
+        int hash = spread(key.hashCode());
+        sketch.increment(hash);
+
+        Stripe stripe = stripes[hash & stripeMask];
+        stripe.lock.lock();
+        try {
+            Block block = stripe.blocks.get(key);
+            if (block != null && block.retain()) {
+                hits.increment();
+                return block;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Offers a block that was just read from the disk tier. The block is copied into
+     * the slab only if a slot is free or the admission policy prefers it over the
+     * current LRU victim.
+     *
+     * @param key The block key.
+     * @param source The disk block, read from position zero.
+     * @param length The number of bytes in the block.
+     */
+    public void admit(String key, FileChannel source, int length) throws IOException {
+        if (!enabled || length > slotSize) {
+            return;
+        }
+
+        int hash = spread(key.hashCode());
+        Stripe stripe = stripes[hash & stripeMask];
+
+        ByteBuffer slot = freeSlots.poll();
+        if (slot == null) {
+            if (!evictFor(hash)) {
+                rejections.increment();
+                return;
+            }
+            slot = freeSlots.poll();
+            if (slot == null) {
+                // The victim is still being read; its slot comes back on release
+                return;
+            }
+        }
+
+        slot.clear();
+        slot.limit(length);
+        while (slot.hasRemaining()) {
+            if (source.read(slot, slot.position()) < 0) {
+                break;
+            }
+        }
+
+        if (slot.hasRemaining()) {
+            freeSlots.offer(slot);
+            return;
+        }
+
+        Block block = new Block(hash, slot, length);
+        stripe.lock.lock();
+        try {
+            if (stripe.blocks.putIfAbsent(key, block) != null) {
+                freeSlots.offer(slot);
+                return;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        residentBytes.addAndGet(length);
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    public long getResidentBytes() {
+        return residentBytes.get();
+    }
+
+    private boolean evictFor(int candidateHash) {
+        int candidateFrequency = sketch.frequency(candidateHash);
+
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe stripe = stripes[(candidateHash + i) & stripeMask];
+            stripe.lock.lock();
+            try {
+                Iterator<Map.Entry<String, Block>> it = stripe.blocks.entrySet().iterator();
+                if (!it.hasNext()) {
+                    continue;
+                }
+
+                Block victim = it.next().getValue();
+                if (sketch.frequency(victim.hash) >= candidateFrequency) {
+                    return false;
+                }
+                it.remove();
+                victim.release();
+                return true;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return false;
+    }
+
+    private void allocateSlab(int slots) {
+        int slotsPerArena = Math.max(1, MAX_ARENA_BYTES / slotSize);
+        int remaining = slots;
+
+        while (remaining > 0) {
+            int arenaSlots = Math.min(remaining, slotsPerArena);
+            ByteBuffer arena = ByteBuffer.allocateDirect(arenaSlots * slotSize);
+            for (int i = 0; i < arenaSlots; i++) {
+                arena.limit((i + 1) * slotSize).position(i * slotSize);
+                freeSlots.offer(arena.slice());
+            }
+            remaining -= arenaSlots;
+        }
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x45d9f3b;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<String, Block> blocks = new LinkedHashMap<>(64, 0.75f, true);
+    }
+
+    /**
+     * A cached block pinned by reference count. The cache itself holds one reference
+     * until eviction; the slot returns to the free list when the last reader releases it.
+     */
+    public class Block {
+        private final int hash;
+        private final ByteBuffer slot;
+        private final int length;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Block(int hash, ByteBuffer slot, int length) {
+            this.hash = hash;
+            this.slot = slot;
+            this.length = length;
+        }
+
+        /**
+         * Returns a read-only view of {@code count} bytes starting at {@code offset}.
+         */
+        public ByteBuffer view(int offset, int count) {
+            ByteBuffer view = slot.asReadOnlyBuffer();
+            view.limit(offset + count).position(offset);
+            return view;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        private boolean retain() {
+            while (true) {
+                int current = references.get();
+                if (current <= 0) {
+                    return false;
+                }
+                if (references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        public void release() {
+            if (references.decrementAndGet() == 0) {
+                residentBytes.addAndGet(-length);
+                freeSlots.offer(slot);
+            }
+        }
+    }
+}
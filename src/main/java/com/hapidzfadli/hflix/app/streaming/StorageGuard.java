@@ -0,0 +1,390 @@
+package com.hapidzfadli.hflix.app.streaming;
+
+import com.hapidzfadli.hflix.api.exception.StorageUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.minio.errors.ErrorResponseException;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Response;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * StorageGuard
+ *
+ * Purpose: Bulkhead and circuit breaker between the streaming path and object
+ * storage. Each kind of storage call may only occupy a bounded number of threads,
+ * and a call beyond that is refused after a short wait instead of queuing on the
+ * MinIO client, so a slow backend can no longer drain the servlet threads that the
+ * metadata endpoints share. A single breaker watches the outcome and latency of
+ * the most recent calls; once too many fail or run slow it refuses every storage
+ * call for a cool-down period, then lets a few trial calls through to decide
+ * whether to close again.
+ */
+@Slf4j
+@Component
+public class StorageGuard {
+
+    public enum Operation {
+        GET_RANGE,
+        STAT;
+
+        private String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    /**
+     * A single call to object storage.
+     */
+    @FunctionalInterface
+    public interface StorageCall<T> {
+        T call() throws Exception;
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Operation, Semaphore> bulkheads = new EnumMap<>(Operation.class);
+    private final long maxWaitMillis;
+    private final long slowCallNanos;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long openMillis;
+    private final int halfOpenCalls;
+
+    // Ring of the outcomes of the most recent calls while the circuit is closed
+    private final boolean[] windowFailed;
+    private final boolean[] windowSlow;
+    private int windowNext;
+    private int windowCount;
+    private int windowFailures;
+    private int windowSlowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    public StorageGuard(MeterRegistry meterRegistry,
+                        @Value("${video.storage.bulkhead.get-range.max-concurrent}") int maxConcurrentRangeReads,
+                        @Value("${video.storage.bulkhead.stat.max-concurrent}") int maxConcurrentStats,
+                        @Value("${video.storage.bulkhead.max-wait-ms}") long maxWaitMillis,
+                        @Value("${video.storage.circuit-breaker.window-size}") int windowSize,
+                        @Value("${video.storage.circuit-breaker.minimum-calls}") int minimumCalls,
+                        @Value("${video.storage.circuit-breaker.failure-rate-threshold}") int failureRateThreshold,
+                        @Value("${video.storage.circuit-breaker.slow-call-threshold-ms}") long slowCallMillis,
+                        @Value("${video.storage.circuit-breaker.slow-call-rate-threshold}") int slowCallRateThreshold,
+                        @Value("${video.storage.circuit-breaker.open-seconds}") long openSeconds,
+                        @Value("${video.storage.circuit-breaker.half-open-calls}") int halfOpenCalls) {
+        this.meterRegistry = meterRegistry;
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, slowCallMillis));
+        this.windowFailed = new boolean[Math.max(1, windowSize)];
+        this.windowSlow = new boolean[windowFailed.length];
+        this.minimumCalls = Math.min(Math.max(1, minimumCalls), windowFailed.length);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openMillis = TimeUnit.SECONDS.toMillis(Math.max(1, openSeconds));
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+
+        registerBulkhead(Operation.GET_RANGE, maxConcurrentRangeReads);
+        registerBulkhead(Operation.STAT, maxConcurrentStats);
+        Gauge.builder("hflix.storage.circuit.state", this, guard -> guard.getState().ordinal())
+                .description("Storage circuit state: 0 closed, 1 half-open, 2 open")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Refuses a request up front when its storage call would be refused anyway, so the
+     * client gets a 503 before the response is committed rather than a stream that
+     * breaks after the headers. Takes no permit; the call itself still goes through
+     * {@link #execute} or {@link #openStream}.
+     *
+     * @param operation The kind of storage call the request will make.
+     */
+    public void checkAvailable(Operation operation) {
+        long blockedSeconds = getBlockedSeconds();
+        if (blockedSeconds > 0) {
+            throw reject(operation, "circuit", "Storage is temporarily unavailable", blockedSeconds);
+        }
+        if (bulkheads.get(operation).availablePermits() == 0) {
+            throw reject(operation, "bulkhead", "Too many concurrent storage requests", 1);
+        }
+    }
+
+    /**
+     * Runs a storage call that completes when it returns, such as a stat.
+     *
+     * @param operation The kind of storage call.
+     * @param call The call to run.
+     * @return The result of the call.
+     * @throws StorageUnavailableException If the bulkhead is full or the circuit is open.
+     */
+    public <T> T execute(Operation operation, StorageCall<T> call) throws Exception {
+        Semaphore bulkhead = acquire(operation);
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.call();
+            failed = false;
+            return result;
+        } catch (Exception e) {
+            failed = isStorageFailure(e);
+            throw e;
+        } finally {
+            bulkhead.release();
+            record(failed, System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Opens a stream from storage. The permit is held, and the outcome recorded, until
+     * the returned stream is closed, since that is how long the read occupies a thread
+     * and a storage connection. Latency is measured to the first byte.
+     *
+     * @param operation The kind of storage call.
+     * @param call The call that opens the stream.
+     * @return The guarded stream, which must be closed.
+     * @throws StorageUnavailableException If the bulkhead is full or the circuit is open.
+     */
+    public InputStream openStream(Operation operation, StorageCall<InputStream> call) throws Exception {
+        Semaphore bulkhead = acquire(operation);
+        long started = System.nanoTime();
+        boolean opened = false;
+        boolean failed = true;
+        try {
+            InputStream stream = call.call();
+            opened = true;
+            return new GuardedStream(stream, bulkhead, System.nanoTime() - started);
+        } catch (Exception e) {
+            failed = isStorageFailure(e);
+            throw e;
+        } finally {
+            if (!opened) {
+                bulkhead.release();
+                record(failed, System.nanoTime() - started);
+            }
+        }
+    }
+
+    private Semaphore acquire(Operation operation) throws InterruptedException {
+        Semaphore bulkhead = bulkheads.get(operation);
+        if (!bulkhead.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+            throw reject(operation, "bulkhead", "Too many concurrent storage requests", 1);
+        }
+
+        long blockedSeconds = admit();
+        if (blockedSeconds > 0) {
+            bulkhead.release();
+            throw reject(operation, "circuit", "Storage is temporarily unavailable", blockedSeconds);
+        }
+        return bulkhead;
+    }
+
+    /**
+     * Lets a call through the breaker, moving an expired open circuit to half-open.
+     *
+     * @return 0 if the call may proceed, otherwise the seconds to wait before retrying.
+     */
+    private synchronized long admit() {
+        if (state == State.OPEN) {
+            long remaining = openedAt + openMillis - System.currentTimeMillis();
+            if (remaining > 0) {
+                return toSeconds(remaining);
+            }
+            log.info("Storage circuit half-open, letting {} trial calls through", halfOpenCalls);
+            state = State.HALF_OPEN;
+            halfOpenPermits = halfOpenCalls;
+            halfOpenSuccesses = 0;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                return 1;
+            }
+            halfOpenPermits--;
+        }
+        return 0;
+    }
+
+    private synchronized long getBlockedSeconds() {
+        if (state == State.OPEN) {
+            // Once the cool-down is over the next call becomes a trial call
+            long remaining = openedAt + openMillis - System.currentTimeMillis();
+            return remaining > 0 ? toSeconds(remaining) : 0;
+        }
+        return state == State.HALF_OPEN && halfOpenPermits == 0 ? 1 : 0;
+    }
+
+    private synchronized State getState() {
+        return state;
+    }
+
+    private synchronized void record(boolean failed, long elapsedNanos) {
+        boolean slow = elapsedNanos >= slowCallNanos;
+
+        if (state == State.HALF_OPEN) {
+            if (failed || slow) {
+                log.warn("Storage trial call {}, reopening the circuit", failed ? "failed" : "was slow");
+                open();
+            } else if (++halfOpenSuccesses >= halfOpenCalls) {
+                log.info("Storage circuit closed after {} successful trial calls", halfOpenSuccesses);
+                state = State.CLOSED;
+                resetWindow();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // Calls admitted before the circuit opened say nothing new
+            return;
+        }
+
+        if (windowCount == windowFailed.length) {
+            windowFailures -= windowFailed[windowNext] ? 1 : 0;
+            windowSlowCalls -= windowSlow[windowNext] ? 1 : 0;
+        } else {
+            windowCount++;
+        }
+        windowFailed[windowNext] = failed;
+        windowSlow[windowNext] = slow;
+        windowFailures += failed ? 1 : 0;
+        windowSlowCalls += slow ? 1 : 0;
+        windowNext = (windowNext + 1) % windowFailed.length;
+
+        if (windowCount < minimumCalls) {
+            return;
+        }
+        int failureRate = windowFailures * 100 / windowCount;
+        int slowCallRate = windowSlowCalls * 100 / windowCount;
+        if (failureRate >= failureRateThreshold || slowCallRate >= slowCallRateThreshold) {
+            log.warn("Opening storage circuit for {} ms: {}% of the last {} calls failed, {}% were slow",
+                    openMillis, failureRate, windowCount, slowCallRate);
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        windowNext = 0;
+        windowCount = 0;
+        windowFailures = 0;
+        windowSlowCalls = 0;
+    }
+
+    /**
+     * Errors the storage answered deliberately, such as a missing object, say nothing
+     * about its health; only server errors and transport failures count against it.
+     */
+    private boolean isStorageFailure(Exception e) {
+        if (e instanceof ErrorResponseException) {
+            Response response = ((ErrorResponseException) e).response();
+            return response == null || response.code() >= 500;
+        }
+        return true;
+    }
+
+    private StorageUnavailableException reject(Operation operation, String reason, String message,
+                                               long retryAfterSeconds) {
+        Counter.builder("hflix.storage.rejections")
+                .description("Storage calls refused by the bulkhead or the circuit breaker")
+                .tag("operation", operation.tag())
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        return new StorageUnavailableException(message, retryAfterSeconds);
+    }
+
+    private void registerBulkhead(Operation operation, int maxConcurrent) {
+        Semaphore bulkhead = new Semaphore(Math.max(1, maxConcurrent));
+        bulkheads.put(operation, bulkhead);
+        Gauge.builder("hflix.storage.bulkhead.available", bulkhead, Semaphore::availablePermits)
+                .description("Free storage call permits, per operation")
+                .tag("operation", operation.tag())
+                .register(meterRegistry);
+    }
+
+    private static long toSeconds(long millis) {
+        return Math.max(1, (millis + 999) / 1000);
+    }
+
+    /**
+     * Holds the bulkhead permit for as long as the stream is open and records the
+     * outcome of the call when it is closed.
+     */
+    private class GuardedStream extends FilterInputStream {
+        private final Semaphore bulkhead;
+        private final long latencyNanos;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean failed;
+
+        private GuardedStream(InputStream in, Semaphore bulkhead, long latencyNanos) {
+            super(in);
+            this.bulkhead = bulkhead;
+            this.latencyNanos = latencyNanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            try {
+                return super.skip(n);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (closed.compareAndSet(false, true)) {
+                    bulkhead.release();
+                    record(failed, latencyNanos);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.hapidzfadli.hflix.app.streaming;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * TransferBufferPool
+ *
+ * Purpose: Hands out small, reusable byte buffers for copying object storage
+ * streams to the servlet output stream. Each streaming request holds exactly
+ * one buffer, so heap use per viewer stays constant regardless of range size.
+ */
+@Slf4j
+@Component
+public class TransferBufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> buffers;
+
+    public TransferBufferPool(@Value("${video.streaming.buffer-size}") int bufferSize,
+                              @Value("${video.streaming.buffer-pool-size:256}") int poolSize) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    public byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    public void release(byte[] buffer) {
+        if (buffer != null && buffer.length == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Copies at most {@code length} bytes from the input to the output using a pooled buffer.
+     *
+     * @param in The source stream.
+     * @param out The destination stream.
+     * @param length The maximum number of bytes to copy.
+     * @return The number of bytes actually copied.
+     */
+    public long transfer(InputStream in, OutputStream out, long length) throws IOException {
+        byte[] buffer = acquire();
+        try {
+            long remaining = length;
+            while (remaining > 0) {
+                int bytesRead = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (bytesRead == -1) {
+                    break;
+                }
+                out.write(buffer, 0, bytesRead);
+                remaining -= bytesRead;
+            }
+            return length - remaining;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
@@ -0,0 +1,84 @@
+package com.hapidzfadli.hflix.app.worker;
+
+import com.hapidzfadli.hflix.api.dto.EncodingJobDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates how many cores an encoding job needs and how much work it is.
+ * A job's thread budget grows with the encoder's relative cost and the output
+ * height, so a 4K libx265 encode gets many threads and a 240p libx264 encode one.
+ * Split and stitch jobs only copy streams, and audio jobs barely use a core, so
+ * they always get a single thread.
+ */
+@Component
+public class EncodingCostModel {
+
+    private static final double REFERENCE_HEIGHT = 720.0;
+    private static final double STREAM_COPY_FACTOR = 0.05;
+    private static final double AUDIO_FACTOR = 0.1;
+    private static final int DEFAULT_DURATION_SECONDS = 600;
+
+    private final Map<String, Double> codecWeights = new HashMap<>();
+
+    public EncodingCostModel(@Value("${video.encoding.scheduler.codec-weights}") String codecWeightsConfig) {
+        for (String entry : codecWeightsConfig.split(",")) {
+            int colon = entry.lastIndexOf(':');
+            if (colon > 0) {
+                codecWeights.put(entry.substring(0, colon).trim(), Double.parseDouble(entry.substring(colon + 1).trim()));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of threads the job's ffmpeg process may use, between 1 and {@code capacity}.
+     */
+    public int getThreads(EncodingJobDTO job, int capacity) {
+        if (job.getMode() == EncodingJobDTO.Mode.SPLIT || job.getMode() == EncodingJobDTO.Mode.STITCH
+                || job.getMode() == EncodingJobDTO.Mode.AUDIO) {
+            return 1;
+        }
+
+        double weight = codecWeights.getOrDefault(job.getCodec(), 1.0);
+        double threads = 0;
+        for (String resolution : getResolutions(job)) {
+            threads += weight * getResolutionHeight(resolution) / REFERENCE_HEIGHT;
+        }
+        return (int) Math.max(1, Math.min(capacity, Math.ceil(threads)));
+    }
+
+    /**
+     * Returns the estimated CPU work of the job in thread-seconds of media, used to run short jobs first.
+     */
+    public double getEstimatedWork(EncodingJobDTO job, int threads) {
+        int duration = job.getDuration() != null && job.getDuration() > 0 ? job.getDuration() : DEFAULT_DURATION_SECONDS;
+        double work = (double) threads * duration;
+
+        if (job.getMode() == EncodingJobDTO.Mode.SPLIT || job.getMode() == EncodingJobDTO.Mode.STITCH) {
+            work *= STREAM_COPY_FACTOR;
+        } else if (job.getMode() == EncodingJobDTO.Mode.AUDIO) {
+            work *= AUDIO_FACTOR;
+        }
+        return work;
+    }
+
+    private List<String> getResolutions(EncodingJobDTO job) {
+        if (job.getMode() == EncodingJobDTO.Mode.LADDER && job.getResolutions() != null) {
+            return job.getResolutions();
+        }
+        return job.getResolution() != null ? List.of(job.getResolution()) : Collections.emptyList();
+    }
+
+    private int getResolutionHeight(String resolution) {
+        if (resolution.equals("4K")) {
+            return 2160;
+        }
+
+        return Integer.parseInt(resolution.replaceAll("[^0-9]", ""));
+    }
+}
@@ -0,0 +1,31 @@
+package com.hapidzfadli.hflix.app.worker;
+
+import com.hapidzfadli.hflix.api.dto.EncodingJobDTO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Consumes the encoding queue and hands each job to the local scheduler.
+ * The offset is acknowledged by the scheduler only after the job has finished, so a
+ * worker that dies mid-encode leaves the job to be redelivered to another node.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EncodingJobListener {
+
+    public static final String LISTENER_ID = "encodingJobListener";
+
+    private final EncodingScheduler encodingScheduler;
+
+    @KafkaListener(id = LISTENER_ID, topics = "${kafka.topic.encoding-queue}")
+    public void onEncodingJob(EncodingJobDTO job, Acknowledgment acknowledgment) {
+        log.info("Received encoding job for video ID: {}, mode: {}, resolution: {}, codec: {}",
+                job.getVideoId(), job.getMode(), job.getResolution(), job.getCodec());
+
+        encodingScheduler.submit(job, acknowledgment);
+    }
+}
@@ -0,0 +1,215 @@
+package com.hapidzfadli.hflix.app.worker;
+
+import com.hapidzfadli.hflix.api.dto.EncodingJobDTO;
+import com.hapidzfadli.hflix.app.service.VideoEncodingService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admits encoding jobs onto this node's cores. Every job is given a thread budget
+ * by the cost model and only starts once that many threads are free, so parallel
+ * libx265 or libvpx-vp9 encodes do not oversubscribe the machine.
+ *
+ * Received jobs wait in a small local queue ordered by estimated work, so low
+ * renditions and short videos run first and larger jobs backfill whatever capacity
+ * is left. A job's priority improves the longer it waits, and once the head of the
+ * queue has waited past the aging period no smaller job may jump ahead of it. When
+ * the local queue is full the Kafka listener is paused so no further jobs are
+ * pulled onto this node.
+ */
+@Slf4j
+@Component
+public class EncodingScheduler {
+
+    private final VideoEncodingService videoEncodingService;
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final EncodingCostModel costModel;
+    private final int capacity;
+    private final int maxPending;
+    private final long agingMillis;
+    private final ExecutorService executor;
+
+    private final List<PendingJob> pending = new ArrayList<>();
+    private int usedThreads;
+    private int runningJobs;
+
+    private volatile boolean shuttingDown;
+
+    public EncodingScheduler(VideoEncodingService videoEncodingService,
+                             KafkaListenerEndpointRegistry listenerRegistry,
+                             EncodingCostModel costModel,
+                             @Value("${video.encoding.scheduler.cpu-budget}") int cpuBudget,
+                             @Value("${video.encoding.scheduler.max-pending}") int maxPending,
+                             @Value("${video.encoding.scheduler.aging-seconds}") long agingSeconds) {
+        this.videoEncodingService = videoEncodingService;
+        this.listenerRegistry = listenerRegistry;
+        this.costModel = costModel;
+        this.capacity = cpuBudget > 0 ? cpuBudget : Runtime.getRuntime().availableProcessors();
+        this.maxPending = Math.max(1, maxPending);
+        this.agingMillis = TimeUnit.SECONDS.toMillis(Math.max(1, agingSeconds));
+        // Every running job holds at least one thread of the budget, which bounds the pool
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("encoding-worker-" + thread.getId());
+            return thread;
+        });
+        log.info("Encoding scheduler started with a budget of {} threads", capacity);
+    }
+
+    public synchronized void submit(EncodingJobDTO job, Acknowledgment acknowledgment) {
+        int threads = costModel.getThreads(job, capacity);
+        pending.add(new PendingJob(job, acknowledgment, threads, costModel.getEstimatedWork(job, threads)));
+
+        if (pending.size() >= maxPending) {
+            pauseListener();
+        }
+        dispatch();
+    }
+
+    public synchronized int getRunningJobs() {
+        return runningJobs;
+    }
+
+    public synchronized int getUsedThreads() {
+        return usedThreads;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        shuttingDown = true;
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            // Unacknowledged jobs, running or still queued here, will be redelivered to another worker
+            executor.shutdownNow();
+        }
+    }
+
+    private synchronized void dispatch() {
+        if (shuttingDown) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        pending.sort(Comparator.comparingDouble(job -> job.getPriority(now, agingMillis)));
+
+        Iterator<PendingJob> it = pending.iterator();
+        boolean head = true;
+        while (it.hasNext() && usedThreads < capacity) {
+            PendingJob job = it.next();
+
+            if (usedThreads + job.threads > capacity) {
+                if (head && now - job.receivedAt >= agingMillis) {
+                    // Reserve the freed threads for a starving job instead of backfilling
+                    break;
+                }
+                head = false;
+                continue;
+            }
+
+            it.remove();
+            head = false;
+            usedThreads += job.threads;
+            runningJobs++;
+            executor.execute(() -> run(job));
+        }
+
+        if (pending.size() < maxPending) {
+            resumeListener();
+        }
+    }
+
+    private void run(PendingJob pendingJob) {
+        EncodingJobDTO job = pendingJob.job;
+        boolean finished = false;
+        try {
+            log.info("Running {} job for video ID: {}, resolution: {}, codec: {} with {} threads",
+                    job.getMode(), job.getVideoId(), job.getResolution(), job.getCodec(), pendingJob.threads);
+            process(job, pendingJob.threads);
+            finished = !shuttingDown;
+        } catch (Exception e) {
+            // Failures are recorded on the format by the encoding service; the job is not retried
+            log.error("Encoding job failed for video ID: {}", job.getVideoId(), e);
+            finished = !shuttingDown;
+        } finally {
+            if (finished) {
+                pendingJob.acknowledgment.acknowledge();
+            }
+            synchronized (this) {
+                usedThreads -= pendingJob.threads;
+                runningJobs--;
+            }
+            dispatch();
+        }
+    }
+
+    private void process(EncodingJobDTO job, int threads) {
+        switch (job.getMode()) {
+            case LADDER:
+                videoEncodingService.processLadderEncodingJob(job.getVideoId(), job.getCodec(), threads);
+                break;
+            case AUDIO:
+                videoEncodingService.processAudioJob(job.getVideoId(), threads);
+                break;
+            case SPLIT:
+                videoEncodingService.processSplitJob(job.getVideoId());
+                break;
+            case CHUNK:
+                videoEncodingService.processChunkEncodingJob(job.getVideoId(), job.getFormatId(), job.getChunkIndex(), threads);
+                break;
+            case STITCH:
+                videoEncodingService.processStitchJob(job.getVideoId(), job.getFormatId());
+                break;
+            case RENDITION:
+            default:
+                videoEncodingService.processEncodingJob(job.getVideoId(), job.getResolution(), job.getCodec(), threads);
+        }
+    }
+
+    private void pauseListener() {
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(EncodingJobListener.LISTENER_ID);
+        if (container != null && !container.isPauseRequested()) {
+            log.info("{} encoding jobs queued locally, pausing the encoding queue consumer", pending.size());
+            container.pause();
+        }
+    }
+
+    private void resumeListener() {
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(EncodingJobListener.LISTENER_ID);
+        if (container != null && container.isPauseRequested() && !shuttingDown) {
+            log.info("Encoding queue has room, resuming the encoding queue consumer");
+            container.resume();
+        }
+    }
+
+    private static class PendingJob {
+        private final EncodingJobDTO job;
+        private final Acknowledgment acknowledgment;
+        private final int threads;
+        private final double estimatedWork;
+        private final long receivedAt = System.currentTimeMillis();
+
+        private PendingJob(EncodingJobDTO job, Acknowledgment acknowledgment, int threads, double estimatedWork) {
+            this.job = job;
+            this.acknowledgment = acknowledgment;
+            this.threads = threads;
+            this.estimatedWork = estimatedWork;
+        }
+
+        private double getPriority(long now, long agingMillis) {
+            return estimatedWork / (1.0 + (double) (now - receivedAt) / agingMillis);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.hapidzfadli.hflix.app.worker;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Runs ffmpeg processes under supervision. Each process writes machine-readable
+ * {@code -progress} output, which a dedicated reader thread drains and parses, so
+ * the pipe never fills up and blocks the encoder. A process whose output position
+ * has not advanced for the stall timeout is killed, as is one that exceeds the
+ * overall timeout. Progress is reported to the caller at most once per interval.
+ */
+@Slf4j
+@Component
+public class FfmpegSupervisor {
+
+    private static final long POLL_INTERVAL_MS = 1000;
+    private static final int TAIL_LINES = 20;
+    private static final Pattern PROGRESS_LINE = Pattern.compile("^[a-z_0-9]+=\\S*$");
+
+    private final long stallTimeoutMs;
+    private final long timeoutMs;
+    private final long progressIntervalMs;
+    private final ExecutorService readers;
+
+    public FfmpegSupervisor(@Value("${video.encoding.supervisor.stall-timeout-seconds}") long stallTimeoutSeconds,
+                            @Value("${video.encoding.supervisor.timeout-minutes}") long timeoutMinutes,
+                            @Value("${video.encoding.supervisor.progress-interval-ms}") long progressIntervalMs) {
+        this.stallTimeoutMs = TimeUnit.SECONDS.toMillis(stallTimeoutSeconds);
+        this.timeoutMs = TimeUnit.MINUTES.toMillis(timeoutMinutes);
+        this.progressIntervalMs = progressIntervalMs;
+        this.readers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("ffmpeg-output-" + thread.getId());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Receives throttled progress of a supervised process.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * @param percent Estimated percent complete, 0-99 while the process is running.
+         * @param speed Encode speed as a multiple of real time, or 0 if ffmpeg has not reported it yet.
+         */
+        void onProgress(int percent, double speed);
+    }
+
+    /**
+     * Runs an ffmpeg command to completion.
+     *
+     * @param command The ffmpeg command line, starting with the binary.
+     * @param label A short description of the job for log messages.
+     * @param expectedSeconds The duration of the media being written, used to estimate percent complete.
+     * @param listener Receives progress updates; may be null.
+     * @return true if ffmpeg exited successfully.
+     */
+    public boolean run(List<String> command, String label, double expectedSeconds, ProgressListener listener)
+            throws IOException, InterruptedException {
+        List<String> supervised = new ArrayList<>(command.size() + 3);
+        supervised.add(command.get(0));
+        supervised.addAll(List.of("-progress", "pipe:1", "-nostats"));
+        supervised.addAll(command.subList(1, command.size()));
+
+        ProcessBuilder pb = new ProcessBuilder(supervised);
+        pb.redirectErrorStream(true);
+
+        Process process = pb.start();
+        Progress progress = new Progress();
+        Future<?> reader = readers.submit(() -> drain(process, progress));
+
+        long started = System.currentTimeMillis();
+        long lastReported = started;
+        try {
+            while (!process.waitFor(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                long now = System.currentTimeMillis();
+
+                if (now - progress.lastAdvanceAt > stallTimeoutMs) {
+                    log.error("ffmpeg {} stalled at {} us for {} ms, killing it:\n{}",
+                            label, progress.outTimeUs, now - progress.lastAdvanceAt, progress.tail());
+                    kill(process);
+                    return false;
+                }
+                if (now - started > timeoutMs) {
+                    log.error("ffmpeg {} timed out after {} ms, killing it", label, now - started);
+                    kill(process);
+                    return false;
+                }
+                if (listener != null && now - lastReported >= progressIntervalMs) {
+                    lastReported = now;
+                    listener.onProgress(getPercent(progress, expectedSeconds), progress.speed);
+                }
+            }
+        } catch (InterruptedException e) {
+            kill(process);
+            throw e;
+        }
+
+        try {
+            reader.get(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            reader.cancel(true);
+        }
+
+        if (process.exitValue() != 0) {
+            log.error("ffmpeg {} exited with code {}:\n{}", label, process.exitValue(), progress.tail());
+            return false;
+        }
+
+        log.debug("ffmpeg {} finished in {} ms", label, System.currentTimeMillis() - started);
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        readers.shutdownNow();
+    }
+
+    private void drain(Process process, Progress progress) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (PROGRESS_LINE.matcher(line).matches()) {
+                    progress.accept(line);
+                } else {
+                    progress.log(line);
+                }
+            }
+        } catch (IOException e) {
+            // The stream closes when the process is killed
+        }
+    }
+
+    private int getPercent(Progress progress, double expectedSeconds) {
+        if (expectedSeconds <= 0) {
+            return 0;
+        }
+        double percent = progress.outTimeUs / (expectedSeconds * 10_000);
+        return (int) Math.max(0, Math.min(99, percent));
+    }
+
+    private void kill(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private static class Progress {
+        private volatile long outTimeUs;
+        private volatile double speed;
+        private volatile long lastAdvanceAt = System.currentTimeMillis();
+        private final Deque<String> tail = new ArrayDeque<>();
+
+        private void accept(String line) {
+            int eq = line.indexOf('=');
+            String key = line.substring(0, eq);
+            String value = line.substring(eq + 1);
+
+            switch (key) {
+                case "out_time_us":
+                case "out_time_ms": // also microseconds, kept by older ffmpeg builds
+                    long time = parseLong(value);
+                    if (time > outTimeUs) {
+                        outTimeUs = time;
+                        lastAdvanceAt = System.currentTimeMillis();
+                    }
+                    break;
+                case "speed":
+                    speed = parseSpeed(value);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private synchronized void log(String line) {
+            if (tail.size() == TAIL_LINES) {
+                tail.removeFirst();
+            }
+            tail.addLast(line);
+        }
+
+        private synchronized String tail() {
+            return String.join("\n", tail);
+        }
+
+        private static long parseLong(String value) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        private static double parseSpeed(String value) {
+            try {
+                return Double.parseDouble(value.endsWith("x") ? value.substring(0, value.length() - 1) : value);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.hapidzfadli.hflix.config;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@EnableAsync
+public class AsyncConfig implements WebMvcConfigurer, DisposableBean {
+
+    // Not a bean: a second Executor bean would replace Boot's executor for @Async methods
+    private final ThreadPoolTaskExecutor streamingExecutor;
+
+    public AsyncConfig(@Value("${video.streaming.executor.threads}") int threads,
+                       @Value("${video.streaming.executor.queue-capacity}") int queueCapacity) {
+        streamingExecutor = new ThreadPoolTaskExecutor();
+        streamingExecutor.setCorePoolSize(Math.max(1, threads));
+        streamingExecutor.setMaxPoolSize(Math.max(1, threads));
+        streamingExecutor.setQueueCapacity(Math.max(0, queueCapacity));
+        streamingExecutor.setThreadNamePrefix("stream-");
+        streamingExecutor.initialize();
+    }
+
+    /**
+     * Streaming response bodies are written on this pool rather than the shared task executor,
+     * so concurrent streams are bounded by the configured thread count instead of its 8 core threads.
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(streamingExecutor);
+    }
+
+    @Override
+    public void destroy() {
+        streamingExecutor.shutdown();
+    }
+}
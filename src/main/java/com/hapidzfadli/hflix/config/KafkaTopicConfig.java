@@ -0,0 +1,29 @@
+package com.hapidzfadli.hflix.config;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+
+@Configuration
+public class KafkaTopicConfig {
+
+    @Value("${kafka.topic.encoding-queue}")
+    private String encodingQueueTopic;
+
+    @Value("${kafka.topic.encoding-queue-partitions}")
+    private int encodingQueuePartitions;
+
+    @Value("${kafka.topic.replication-factor}")
+    private short replicationFactor;
+
+    // Encoding parallelism across the consumer group is bounded by the partition count of this topic
+    @Bean
+    public NewTopic encodingQueue() {
+        return TopicBuilder.name(encodingQueueTopic)
+                .partitions(encodingQueuePartitions)
+                .replicas(replicationFactor)
+                .build();
+    }
+}
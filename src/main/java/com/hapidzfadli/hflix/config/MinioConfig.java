@@ -1,11 +1,26 @@
 package com.hapidzfadli.hflix.config;
 
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.minio.MinioClient;
 import lombok.Data;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 @Data
 public class MinioConfig {
@@ -24,6 +39,9 @@ public class MinioConfig {
     @Value("${minio.secure}")
     private boolean secure;
 
+    @Value("${minio.region:us-east-1}")
+    private String region;
+
     @Value("${minio.videos.original-path}")
     private String originalPath;
 
@@ -33,11 +51,96 @@ public class MinioConfig {
     @Value("${minio.videos.thumbnail-path}")
     private String thumbnailPath;
 
+    @Value("${minio.http.max-requests}")
+    private int maxRequests;
+
+    @Value("${minio.http.max-requests-per-host}")
+    private int maxRequestsPerHost;
+
+    @Value("${minio.http.max-idle-connections}")
+    private int maxIdleConnections;
+
+    @Value("${minio.http.keep-alive-seconds}")
+    private long keepAliveSeconds;
+
+    @Value("${minio.http.connect-timeout-ms}")
+    private long connectTimeoutMs;
+
+    @Value("${minio.http.read-timeout-ms}")
+    private long readTimeoutMs;
+
+    @Value("${minio.http.write-timeout-ms}")
+    private long writeTimeoutMs;
+
     @Bean
-    public MinioClient minioClient() {
+    public StorageRequestMetrics storageRequestMetrics(MeterRegistry meterRegistry) {
+        return new StorageRequestMetrics(meterRegistry);
+    }
+
+    /**
+     * MinIO client on a tuned, instrumented HTTP client. The client runs every request
+     * through the OkHttp dispatcher, so the dispatcher's per-host limit caps concurrent
+     * requests to storage; requests above it queue instead of opening more connections.
+     */
+    @Bean
+    public MinioClient minioClient(MeterRegistry meterRegistry, StorageRequestMetrics storageRequestMetrics) {
+        ConnectionPool connectionPool = new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS);
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .writeTimeout(writeTimeoutMs, TimeUnit.MILLISECONDS)
+                .protocols(List.of(Protocol.HTTP_1_1))
+                .addInterceptor(new StorageMetricsInterceptor(storageRequestMetrics))
+                .build();
+
+        Gauge.builder("hflix.storage.pool.connections", connectionPool, ConnectionPool::connectionCount)
+                .description("Open connections to object storage")
+                .register(meterRegistry);
+        Gauge.builder("hflix.storage.pool.idle.connections", connectionPool, ConnectionPool::idleConnectionCount)
+                .description("Idle connections to object storage")
+                .register(meterRegistry);
+        Gauge.builder("hflix.storage.dispatcher.running", dispatcher, Dispatcher::runningCallsCount)
+                .description("Object storage requests being executed")
+                .register(meterRegistry);
+        Gauge.builder("hflix.storage.dispatcher.queued", dispatcher, Dispatcher::queuedCallsCount)
+                .description("Object storage requests waiting for the per-host limit")
+                .register(meterRegistry);
+
         return MinioClient.builder()
                 .endpoint(endpoint)
                 .credentials(accessKey, secretKey)
+                .httpClient(httpClient)
+                .build();
+    }
+
+    /**
+     * S3 client for the multipart upload API, which the MinIO client does not expose publicly.
+     * Chunk uploads, large encoded outputs and multipart listings, completions and aborts all go
+     * through it, so it gets the same connection limit and timeouts as the MinIO client and
+     * reports into the same request metrics. Its pool is capped at the per-host limit, since
+     * every request goes to the one storage endpoint.
+     */
+    @Bean
+    public AmazonS3 amazonS3(StorageRequestMetrics storageRequestMetrics) {
+        ClientConfiguration clientConfiguration = new ClientConfiguration()
+                .withMaxConnections(maxRequestsPerHost)
+                .withConnectionTimeout((int) connectTimeoutMs)
+                .withSocketTimeout((int) readTimeoutMs)
+                .withConnectionMaxIdleMillis(TimeUnit.SECONDS.toMillis(keepAliveSeconds))
+                .withTcpKeepAlive(true);
+
+        return AmazonS3ClientBuilder.standard()
+                .withClientConfiguration(clientConfiguration)
+                .withRequestHandlers(new StorageMetricsRequestHandler(storageRequestMetrics))
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, region))
+                .withPathStyleAccessEnabled(true)
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials(accessKey, secretKey)))
                 .build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,100 @@
+package com.hapidzfadli.hflix.config;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the latency and concurrency of every request the MinIO client sends into the
+ * shared {@link StorageRequestMetrics}.
+ *
+ * Latency is measured until the response headers arrive, i.e. time to first byte. A
+ * request counts as in flight until its response body is closed, since that is how long
+ * it holds a pooled connection.
+ */
+public class StorageMetricsInterceptor implements Interceptor {
+
+    private final StorageRequestMetrics metrics;
+
+    public StorageMetricsInterceptor(StorageRequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String operation = StorageRequestMetrics.getOperation(request.method(), request.header("Range") != null);
+        AtomicInteger active = metrics.getInFlight(operation);
+
+        active.incrementAndGet();
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                active.decrementAndGet();
+            }
+        };
+
+        long started = System.nanoTime();
+        String outcome = "IO_ERROR";
+        try {
+            Response response = chain.proceed(request);
+            outcome = response.isSuccessful() ? "SUCCESS" : response.code() >= 500 ? "SERVER_ERROR" : "CLIENT_ERROR";
+
+            ResponseBody body = response.body();
+            if (body == null) {
+                release.run();
+                return response;
+            }
+            return response.newBuilder().body(new TrackedBody(body, release)).build();
+
+        } catch (IOException | RuntimeException e) {
+            release.run();
+            throw e;
+        } finally {
+            metrics.record(operation, outcome, System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Passes the response body through and reports when it is closed.
+     */
+    private static class TrackedBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+
+        private TrackedBody(ResponseBody delegate, Runnable onClose) {
+            this.delegate = delegate;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public void close() throws IOException {
+                    onClose.run();
+                    super.close();
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
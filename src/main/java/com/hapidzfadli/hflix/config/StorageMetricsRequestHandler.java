@@ -0,0 +1,62 @@
+package com.hapidzfadli.hflix.config;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+
+/**
+ * Records the latency and concurrency of every request the S3 client sends into the shared
+ * {@link StorageRequestMetrics}, so multipart parts, completions and listings show up next
+ * to the MinIO client's requests.
+ *
+ * Latency covers the whole call including the SDK's own retries, until the response has
+ * been handled. A request counts as in flight for that same time.
+ */
+public class StorageMetricsRequestHandler extends RequestHandler2 {
+
+    private static final HandlerContextKey<String> OPERATION = new HandlerContextKey<>("hflix.storage.operation");
+    private static final HandlerContextKey<Long> STARTED = new HandlerContextKey<>("hflix.storage.started");
+
+    private final StorageRequestMetrics metrics;
+
+    public StorageMetricsRequestHandler(StorageRequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void beforeRequest(Request<?> request) {
+        String operation = StorageRequestMetrics.getOperation(request.getHttpMethod().name(),
+                request.getHeaders().containsKey("Range"));
+        request.addHandlerContext(OPERATION, operation);
+        request.addHandlerContext(STARTED, System.nanoTime());
+        metrics.getInFlight(operation).incrementAndGet();
+    }
+
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        int status = response != null && response.getHttpResponse() != null
+                ? response.getHttpResponse().getStatusCode() : 200;
+        complete(request, status < 300 ? "SUCCESS" : status >= 500 ? "SERVER_ERROR" : "CLIENT_ERROR");
+    }
+
+    @Override
+    public void afterError(Request<?> request, Response<?> response, Exception e) {
+        String outcome = "IO_ERROR";
+        if (e instanceof AmazonServiceException) {
+            outcome = ((AmazonServiceException) e).getStatusCode() >= 500 ? "SERVER_ERROR" : "CLIENT_ERROR";
+        }
+        complete(request, outcome);
+    }
+
+    private void complete(Request<?> request, String outcome) {
+        String operation = request.getHandlerContext(OPERATION);
+        Long started = request.getHandlerContext(STARTED);
+        if (operation == null || started == null) {
+            return;
+        }
+        metrics.getInFlight(operation).decrementAndGet();
+        metrics.record(operation, outcome, System.nanoTime() - started);
+    }
+}
@@ -0,0 +1,75 @@
+package com.hapidzfadli.hflix.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latency and concurrency of requests to object storage, grouped by operation: ranged GETs
+ * (streaming reads), whole-object GETs, PUTs (uploads and multipart parts), HEADs (stat) and
+ * anything else by its method.
+ *
+ * Shared by the MinIO and the S3 client so that both report into the same meters. Micrometer
+ * keeps the first gauge registered under a name and tags, so each operation's in-flight
+ * counter has to exist exactly once.
+ */
+public class StorageRequestMetrics {
+
+    private static final List<String> OPERATIONS = List.of("get_range", "get", "put", "stat");
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public StorageRequestMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        OPERATIONS.forEach(this::getInFlight);
+    }
+
+    /**
+     * @param method The HTTP method of the request.
+     * @param ranged Whether the request carries a Range header.
+     * @return The operation the request is recorded under.
+     */
+    public static String getOperation(String method, boolean ranged) {
+        switch (method) {
+            case "GET":
+                return ranged ? "get_range" : "get";
+            case "PUT":
+                return "put";
+            case "HEAD":
+                return "stat";
+            default:
+                return method.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public AtomicInteger getInFlight(String operation) {
+        return inFlight.computeIfAbsent(operation, this::registerInFlight);
+    }
+
+    public void record(String operation, String outcome, long elapsedNanos) {
+        Timer.builder("hflix.storage.requests")
+                .description("Time until object storage responded, per operation")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private AtomicInteger registerInFlight(String operation) {
+        AtomicInteger counter = new AtomicInteger();
+        Gauge.builder("hflix.storage.requests.in.flight", counter, AtomicInteger::get)
+                .description("Object storage requests holding a connection, per operation")
+                .tag("operation", operation)
+                .register(meterRegistry);
+        return counter;
+    }
+}
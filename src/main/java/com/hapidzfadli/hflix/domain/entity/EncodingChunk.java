@@ -0,0 +1,58 @@
+package com.hapidzfadli.hflix.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * EncodingChunk Entity
+ *
+ * Purpose: Tracks one keyframe-aligned slice of a rendition in segment-parallel
+ * encoding. Every chunk of a format is encoded independently on any worker, and
+ * the format is stitched once all of its chunks are READY.
+ *
+ * A worker claims a chunk before encoding it, which starts a new attempt. The
+ * result of an attempt is only recorded if the chunk is still on that attempt,
+ * so an encode whose chunk was reset or reclaimed meanwhile is discarded.
+ */
+@Entity
+@Data
+@Table(name = "encoding_chunks",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"video_format_id", "chunk_index"}))
+public class EncodingChunk {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "video_format_id", nullable = false)
+    private VideoFormat videoFormat;
+
+    @Column(name = "chunk_index", nullable = false)
+    private Integer chunkIndex;
+
+    @Column(name = "s3_path")
+    private String s3Path;
+
+    @Enumerated(EnumType.STRING)
+    private Status status = Status.PENDING;
+
+    @Column(nullable = false)
+    private int attempt;
+
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+
+    public enum Status {
+        PENDING,
+        ENCODING,
+        READY,
+        ERROR
+    }
+}
@@ -0,0 +1,44 @@
+package com.hapidzfadli.hflix.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * UploadChunk Entity
+ *
+ * Purpose: Records a chunk received for an upload session, with the ETag of the
+ * multipart part it was stored as and its SHA-256, which together are everything
+ * needed to complete the upload and fingerprint its content.
+ */
+@Entity
+@Data
+@Table(name = "upload_chunks",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"upload_session_id", "chunk_number"}))
+public class UploadChunk {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "upload_session_id", nullable = false)
+    private UploadSession uploadSession;
+
+    @Column(name = "chunk_number", nullable = false)
+    private Integer chunkNumber;
+
+    @Column(name = "part_etag")
+    private String partETag;
+
+    @Column(length = 64)
+    private String sha256;
+
+    @Column
+    private Long size;
+
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,116 @@
+package com.hapidzfadli.hflix.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * UploadSession Entity
+ *
+ * Purpose: Holds the state of a chunked upload in the database rather than in the
+ * memory of the node that started it, so any API node can accept any chunk and a
+ * client can ask which chunks have arrived and resume after a disconnect. Received
+ * chunks are tracked in a bitmap, one bit per chunk number. Once all chunks are in,
+ * the session also records the progress of its background finalization. Presigned
+ * sessions receive their parts directly in object storage and learn about them by
+ * listing the multipart upload when it is completed.
+ *
+ * A faststart upload, whose moov box arrives with the first chunk, also has a prefix
+ * stage: once its leading chunks are contiguous, probing, the poster frame and the
+ * lowest renditions start on them while the rest of the file is still arriving.
+ */
+@Entity
+@Data
+@Table(name = "upload_sessions")
+public class UploadSession {
+    /**
+     * Multipart uploads are limited to 10,000 parts, which bounds the bitmap to 1,250 bytes.
+     */
+    public static final int MAX_CHUNKS = 10000;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "video_id", nullable = false, unique = true)
+    private Video video;
+
+    @Column(name = "multipart_upload_id")
+    private String multipartUploadId;
+
+    @Column(name = "temp_directory")
+    private String tempDirectory;
+
+    @Column(nullable = false)
+    private boolean presigned;
+
+    @Column(name = "total_chunks")
+    private Integer totalChunks;
+
+    @Column(name = "received_chunks", length = MAX_CHUNKS / 8, nullable = false)
+    private byte[] receivedChunks = new byte[0];
+
+    @Column(name = "received_count", nullable = false)
+    private int receivedCount;
+
+    @Enumerated(EnumType.STRING)
+    private Status status = Status.OPEN;
+
+    @Column(name = "prefix_chunks")
+    private Integer prefixChunks;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "prefix_stage", length = 16)
+    private PrefixStage prefixStage;
+
+    @Column(name = "prefix_started_at")
+    private LocalDateTime prefixStartedAt;
+
+    @Column(name = "finalization_id", length = 36, unique = true)
+    private String finalizationId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "finalization_step", length = 32)
+    private FinalizationStep finalizationStep;
+
+    @Column(name = "error_message", length = 1024)
+    private String errorMessage;
+
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public enum Status {
+        OPEN,
+        FINALIZING,
+        COMPLETED,
+        FAILED,
+        REJECTED
+    }
+
+    public enum PrefixStage {
+        WAITING,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    public enum FinalizationStep {
+        QUEUED,
+        HASHING,
+        ASSEMBLING,
+        COMBINING,
+        UPLOADING,
+        PROBING,
+        STARTING_ENCODING,
+        DONE
+    }
+}
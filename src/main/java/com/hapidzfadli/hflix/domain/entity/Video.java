@@ -9,7 +9,7 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "videos")
+@Table(name = "videos", indexes = @Index(name = "idx_videos_content_hash", columnList = "content_hash"))
 public class Video {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -37,9 +37,36 @@ public class Video {
     @Column
     private Integer duration;
 
+    @Column(name = "source_width")
+    private Integer sourceWidth;
+
+    @Column(name = "source_height")
+    private Integer sourceHeight;
+
+    @Column(name = "source_frame_rate")
+    private Double sourceFrameRate;
+
+    @Column(name = "source_bitrate")
+    private Long sourceBitrate;
+
+    @Column(name = "source_video_codec", length = 32)
+    private String sourceVideoCodec;
+
+    @Column(name = "has_audio")
+    private Boolean hasAudio;
+
     @Column(name= "thumbnail_path")
     private String thumbnailPath;
 
+    @Column(name = "manifest_path")
+    private String manifestPath;
+
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;  // SHA-256 over the SHA-256 of each upload chunk, in chunk order
+
+    @Column(name = "encoding_profile", length = 64)
+    private String encodingProfile;
+
     @Enumerated(EnumType.STRING)
     private Status status = Status.UPLOADING;
 
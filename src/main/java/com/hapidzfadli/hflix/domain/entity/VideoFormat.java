@@ -10,6 +10,11 @@ import java.time.LocalDateTime;
 @Data
 @Table(name = "video_formats")
 public class VideoFormat {
+    /**
+     * Resolution of the shared audio renditions, which every video rendition of the same family reuses.
+     */
+    public static final String AUDIO_RESOLUTION = "audio";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -33,6 +38,9 @@ public class VideoFormat {
     @Column(name = "file_size", nullable = false)
     private String fileSize;
 
+    @Column(name = "package_path")
+    private String packagePath;
+
     @Enumerated(EnumType.STRING)
     private Status status = Status.PROCESSING;
 
@@ -41,7 +49,18 @@ public class VideoFormat {
     private LocalDateTime createdAt;
 
     public enum Status {
+        /**
+         * Chunks from an upload's prefix are being encoded; the rendition's remaining chunks are
+         * only added once the complete file has been split, so it cannot be stitched yet.
+         */
+        PREENCODING,
         PROCESSING,
+        STITCHING,
+        /**
+         * Encoded and packaged before the shared audio of its family; the audio is muxed into
+         * the progressive file once it is ready.
+         */
+        AWAITING_AUDIO,
         READY,
         ERROR
     }
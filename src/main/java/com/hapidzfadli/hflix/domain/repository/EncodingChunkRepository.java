@@ -0,0 +1,172 @@
+package com.hapidzfadli.hflix.domain.repository;
+
+import com.hapidzfadli.hflix.domain.entity.EncodingChunk;
+import com.hapidzfadli.hflix.domain.entity.VideoFormat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface EncodingChunkRepository extends JpaRepository<EncodingChunk, Long> {
+    /**
+     * Finds all chunks of a format in playback order.
+     * Used by the stitch step to concatenate the encoded chunks.
+     *
+     * @param videoFormat The format whose chunks are to be found.
+     * @return A list of chunks ordered by chunk index.
+     */
+    List<EncodingChunk> findByVideoFormatOrderByChunkIndex(VideoFormat videoFormat);
+
+    /**
+     * Finds a single chunk of a format.
+     * Used by chunk encoding workers to record the result of their chunk.
+     *
+     * @param videoFormat The format the chunk belongs to.
+     * @param chunkIndex The zero-based position of the chunk in the source.
+     * @return An Optional containing the chunk if it exists.
+     */
+    Optional<EncodingChunk> findByVideoFormatAndChunkIndex(VideoFormat videoFormat, Integer chunkIndex);
+
+    /**
+     * Counts the chunks of a format that have reached a specific status.
+     * Used to report the progress of a chunked rendition.
+     *
+     * @param videoFormat The format whose chunks are to be counted.
+     * @param status The status of the chunks.
+     * @return The number of chunks of the format with the given status.
+     */
+    long countByVideoFormatAndStatus(VideoFormat videoFormat, EncodingChunk.Status status);
+
+    /**
+     * Counts all chunks of a format.
+     *
+     * @param videoFormat The format whose chunks are to be counted.
+     * @return The number of chunks the format was split into.
+     */
+    long countByVideoFormat(VideoFormat videoFormat);
+
+    /**
+     * Atomically claims a chunk for encoding and starts a new attempt. A chunk can be claimed
+     * while PENDING, or while ENCODING once its encoder has stopped reporting, e.g. because its
+     * worker died. Used so that a chunk published more than once is encoded by one worker at a time.
+     *
+     * @param chunkId The ID of the chunk.
+     * @param attempt The attempt the chunk was read at.
+     * @param pending The status of a chunk waiting to be encoded.
+     * @param encoding The status of a claimed chunk.
+     * @param staleBefore Claims last renewed before this time are considered abandoned.
+     * @param now The time to record as the claim's last renewal, from the same clock as staleBefore.
+     * @return 1 if the chunk was claimed, 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE EncodingChunk c SET c.status = :encoding, c.attempt = c.attempt + 1, c.claimedAt = :now " +
+            "WHERE c.id = :chunkId AND c.attempt = :attempt AND " +
+            "(c.status = :pending OR (c.status = :encoding AND c.claimedAt < :staleBefore))")
+    int claimChunk(@Param("chunkId") Long chunkId,
+                   @Param("attempt") int attempt,
+                   @Param("pending") EncodingChunk.Status pending,
+                   @Param("encoding") EncodingChunk.Status encoding,
+                   @Param("staleBefore") LocalDateTime staleBefore,
+                   @Param("now") LocalDateTime now);
+
+    /**
+     * Renews the claim of a chunk attempt.
+     * Used by chunk encoding workers while ffmpeg reports progress.
+     *
+     * @param chunkId The ID of the chunk.
+     * @param attempt The attempt the worker owns.
+     * @param now The time to record as the claim's last renewal.
+     * @return 1 if the claim was renewed, 0 if the chunk has moved on to another attempt.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE EncodingChunk c SET c.claimedAt = :now WHERE c.id = :chunkId AND c.attempt = :attempt")
+    int renewChunkClaim(@Param("chunkId") Long chunkId, @Param("attempt") int attempt, @Param("now") LocalDateTime now);
+
+    /**
+     * Records the outcome of a chunk attempt, unless the chunk has been reset or reclaimed since.
+     * Used by chunk encoding workers so that the result of a superseded encode is discarded.
+     *
+     * @param chunkId The ID of the chunk.
+     * @param attempt The attempt the worker owns.
+     * @param expected The status the chunk must currently have.
+     * @param target The status to move the chunk to.
+     * @param s3Path The object holding the encoded chunk, or null.
+     * @return 1 if the outcome was recorded, 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE EncodingChunk c SET c.status = :target, c.s3Path = :s3Path " +
+            "WHERE c.id = :chunkId AND c.attempt = :attempt AND c.status = :expected")
+    int completeChunk(@Param("chunkId") Long chunkId,
+                      @Param("attempt") int attempt,
+                      @Param("expected") EncodingChunk.Status expected,
+                      @Param("target") EncodingChunk.Status target,
+                      @Param("s3Path") String s3Path);
+
+    /**
+     * Sends a chunk back to be encoded again and starts a new attempt, so that an encode of the
+     * previous attempt that is still in flight is discarded when it finishes. Used by the split job
+     * for prefix chunks that differ from the complete upload or whose encode failed.
+     *
+     * @param chunkId The ID of the chunk.
+     * @param attempt The attempt the chunk was read at.
+     * @param expected The status the chunk was read in.
+     * @param target The status of a chunk waiting to be encoded.
+     * @return 1 if the chunk was reset, 0 if it changed since it was read.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE EncodingChunk c SET c.status = :target, c.s3Path = NULL, c.attempt = c.attempt + 1 " +
+            "WHERE c.id = :chunkId AND c.attempt = :attempt AND c.status = :expected")
+    int resetChunk(@Param("chunkId") Long chunkId,
+                   @Param("attempt") int attempt,
+                   @Param("expected") EncodingChunk.Status expected,
+                   @Param("target") EncodingChunk.Status target);
+
+    /**
+     * Finds the chunks whose claim has not been renewed since the given time, together with their
+     * format and video. Used to find chunks whose encoder stopped reporting, e.g. because its worker died.
+     *
+     * @param encoding The status of a claimed chunk.
+     * @param staleBefore Claims last renewed before this time are considered abandoned.
+     * @param formatStatuses The statuses of formats whose chunks are still wanted.
+     * @return A list of chunks with abandoned claims.
+     */
+    @Query("SELECT c FROM EncodingChunk c JOIN FETCH c.videoFormat f JOIN FETCH f.video " +
+            "WHERE c.status = :encoding AND c.claimedAt < :staleBefore AND f.status IN :formatStatuses")
+    List<EncodingChunk> findStaleClaims(@Param("encoding") EncodingChunk.Status encoding,
+                                        @Param("staleBefore") LocalDateTime staleBefore,
+                                        @Param("formatStatuses") Collection<VideoFormat.Status> formatStatuses);
+
+    /**
+     * Sends a chunk whose claim has gone stale back to be encoded again and starts a new attempt,
+     * so that its previous encoder, should it still be running, can neither renew the claim nor
+     * record a result. Used by the stale claim sweep so that exactly one node publishes the chunk again.
+     *
+     * @param chunkId The ID of the chunk.
+     * @param attempt The attempt the chunk was read at.
+     * @param encoding The status of a claimed chunk.
+     * @param pending The status of a chunk waiting to be encoded.
+     * @param staleBefore Claims last renewed before this time are considered abandoned.
+     * @return 1 if the chunk was released, 0 if it changed since it was read.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE EncodingChunk c SET c.status = :pending, c.attempt = c.attempt + 1 " +
+            "WHERE c.id = :chunkId AND c.attempt = :attempt AND c.status = :encoding AND c.claimedAt < :staleBefore")
+    int releaseStaleChunk(@Param("chunkId") Long chunkId,
+                          @Param("attempt") int attempt,
+                          @Param("encoding") EncodingChunk.Status encoding,
+                          @Param("pending") EncodingChunk.Status pending,
+                          @Param("staleBefore") LocalDateTime staleBefore);
+}
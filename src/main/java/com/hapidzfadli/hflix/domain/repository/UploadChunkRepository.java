@@ -0,0 +1,39 @@
+package com.hapidzfadli.hflix.domain.repository;
+
+import com.hapidzfadli.hflix.domain.entity.UploadChunk;
+import com.hapidzfadli.hflix.domain.entity.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadChunkRepository extends JpaRepository<UploadChunk, Long> {
+    /**
+     * Finds all chunks received for an upload session in chunk order.
+     * Used to complete the multipart upload and compute the content hash.
+     *
+     * @param uploadSession The upload session.
+     * @return A list of chunks ordered by chunk number.
+     */
+    List<UploadChunk> findByUploadSessionOrderByChunkNumber(UploadSession uploadSession);
+
+    /**
+     * Finds a single chunk of an upload session.
+     *
+     * @param uploadSession The upload session.
+     * @param chunkNumber The zero-based chunk number.
+     * @return An Optional containing the chunk if it has been received.
+     */
+    Optional<UploadChunk> findByUploadSessionAndChunkNumber(UploadSession uploadSession, Integer chunkNumber);
+
+    /**
+     * Deletes every chunk record of an upload session.
+     *
+     * @param uploadSession The upload session.
+     */
+    @Modifying
+    void deleteByUploadSession(UploadSession uploadSession);
+}
@@ -0,0 +1,170 @@
+package com.hapidzfadli.hflix.domain.repository;
+
+import com.hapidzfadli.hflix.domain.entity.UploadSession;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, Long> {
+    /**
+     * Finds the upload session of a video.
+     *
+     * @param videoId The ID of the video being uploaded.
+     * @return An Optional containing the session if the upload is still open.
+     */
+    Optional<UploadSession> findByVideoId(Long videoId);
+
+    /**
+     * Finds the upload session of a video and locks its row until the transaction ends.
+     * Used when recording a chunk so that concurrent chunks, possibly on different nodes,
+     * do not overwrite each other's bits in the receipt bitmap.
+     *
+     * @param videoId The ID of the video being uploaded.
+     * @return An Optional containing the locked session if the upload is still open.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM UploadSession s WHERE s.video.id = :videoId")
+    Optional<UploadSession> findByVideoIdForUpdate(@Param("videoId") Long videoId);
+
+    /**
+     * Finds the upload session a finalization job belongs to.
+     *
+     * @param finalizationId The ID returned when finalization was requested.
+     * @return An Optional containing the session if the job exists.
+     */
+    Optional<UploadSession> findByFinalizationId(String finalizationId);
+
+    /**
+     * Atomically moves a session into finalization. Sessions in one of the claimable statuses can be
+     * claimed, as can a session whose finalization has made no progress since the given time, e.g.
+     * because the node running it died. Used so that concurrent completion requests start at most
+     * one finalization.
+     *
+     * @param sessionId The ID of the session.
+     * @param finalizationId The ID of the new finalization job.
+     * @param step The step the new finalization job starts at.
+     * @param finalizing The status of a session being finalized.
+     * @param claimable The statuses from which finalization may start.
+     * @param staleBefore Finalizations last updated before this time are considered abandoned.
+     * @param now The time to record as the session's last update, from the same clock as staleBefore.
+     * @return 1 if the session was claimed, 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadSession s SET s.status = :finalizing, s.finalizationId = :finalizationId, " +
+            "s.finalizationStep = :step, s.errorMessage = NULL, s.updatedAt = :now " +
+            "WHERE s.id = :sessionId AND (s.status IN :claimable OR " +
+            "(s.status = :finalizing AND s.updatedAt < :staleBefore))")
+    int claimFinalization(@Param("sessionId") Long sessionId,
+                          @Param("finalizationId") String finalizationId,
+                          @Param("step") UploadSession.FinalizationStep step,
+                          @Param("finalizing") UploadSession.Status finalizing,
+                          @Param("claimable") Collection<UploadSession.Status> claimable,
+                          @Param("staleBefore") LocalDateTime staleBefore,
+                          @Param("now") LocalDateTime now);
+
+    /**
+     * Atomically starts the prefix stage of a session. Used so that the chunk completing the
+     * prefix starts the stage exactly once, even when several chunks of it arrive at once.
+     *
+     * @param sessionId The ID of the session.
+     * @param waiting The stage the session must currently be in.
+     * @param running The stage to move the session to.
+     * @param now The time to record as the stage's start, from the same clock its staleness is judged by.
+     * @return 1 if the stage was started, 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadSession s SET s.prefixStage = :running, s.prefixStartedAt = :now " +
+            "WHERE s.id = :sessionId AND s.prefixStage = :waiting")
+    int claimPrefixStage(@Param("sessionId") Long sessionId,
+                         @Param("waiting") UploadSession.PrefixStage waiting,
+                         @Param("running") UploadSession.PrefixStage running,
+                         @Param("now") LocalDateTime now);
+
+    /**
+     * Moves a session's prefix stage on if it is in the expected stage. Used instead of saving
+     * the entity so that concurrent chunk receipts are not overwritten.
+     *
+     * @param sessionId The ID of the session.
+     * @param expected The stage the session must currently be in.
+     * @param target The stage to move the session to.
+     * @return 1 if the session was updated, 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadSession s SET s.prefixStage = :target WHERE s.id = :sessionId AND s.prefixStage = :expected")
+    int updatePrefixStage(@Param("sessionId") Long sessionId,
+                          @Param("expected") UploadSession.PrefixStage expected,
+                          @Param("target") UploadSession.PrefixStage target);
+
+    /**
+     * Records the step a finalization has reached, if it is still the session's current one.
+     * Used instead of saving the entity so that a finalization which has been taken over by a
+     * retry can no longer write to the session.
+     *
+     * @param sessionId The ID of the session.
+     * @param finalizationId The ID of the finalization job writing.
+     * @param status The status to set.
+     * @param step The step to set.
+     * @param now The time to record as the session's last update.
+     * @return 1 if the session was updated, 0 if the finalization has been superseded.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadSession s SET s.status = :status, s.finalizationStep = :step, s.updatedAt = :now " +
+            "WHERE s.id = :sessionId AND s.finalizationId = :finalizationId")
+    int updateFinalizationStep(@Param("sessionId") Long sessionId,
+                               @Param("finalizationId") String finalizationId,
+                               @Param("status") UploadSession.Status status,
+                               @Param("step") UploadSession.FinalizationStep step,
+                               @Param("now") LocalDateTime now);
+
+    /**
+     * Records how a finalization ended, if it is still the session's current one. The step it
+     * ended at is kept for the status endpoint.
+     *
+     * @param sessionId The ID of the session.
+     * @param finalizationId The ID of the finalization job writing.
+     * @param status The status to set.
+     * @param errorMessage The reason the finalization failed, or null.
+     * @param now The time to record as the session's last update.
+     * @return 1 if the session was updated, 0 if the finalization has been superseded.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadSession s SET s.status = :status, s.errorMessage = :errorMessage, s.updatedAt = :now " +
+            "WHERE s.id = :sessionId AND s.finalizationId = :finalizationId")
+    int updateFinalizationStatus(@Param("sessionId") Long sessionId,
+                                 @Param("finalizationId") String finalizationId,
+                                 @Param("status") UploadSession.Status status,
+                                 @Param("errorMessage") String errorMessage,
+                                 @Param("now") LocalDateTime now);
+
+    /**
+     * Marks a finalization as alive so that it is not taken over as abandoned. Used while a
+     * finalization waits without moving on to another step.
+     *
+     * @param sessionId The ID of the session.
+     * @param finalizationId The ID of the finalization job.
+     * @param now The time to record as the session's last update.
+     * @return 1 if the session was updated, 0 if the finalization has been superseded.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadSession s SET s.updatedAt = :now " +
+            "WHERE s.id = :sessionId AND s.finalizationId = :finalizationId")
+    int renewFinalization(@Param("sessionId") Long sessionId,
+                          @Param("finalizationId") String finalizationId,
+                          @Param("now") LocalDateTime now);
+}
@@ -1,11 +1,16 @@
 package com.hapidzfadli.hflix.domain.repository;
 
+import com.hapidzfadli.hflix.domain.entity.EncodingChunk;
 import com.hapidzfadli.hflix.domain.entity.Video;
 import com.hapidzfadli.hflix.domain.entity.VideoFormat;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -53,6 +58,16 @@ public interface VideoFormatRepository extends JpaRepository<VideoFormat, Long>
      */
     Optional<VideoFormat> findByVideoAndResolutionAndCodec(Video video, String resolution, String codec);
 
+    /**
+     * Finds all formats of a video encoded with a specific codec.
+     * Used by the ladder encoder, which produces every resolution of a codec in one pass.
+     *
+     * @param video The video whose formats are to be found.
+     * @param codec The codec of the video formats.
+     * @return A list of video formats matching the specific video and codec.
+     */
+    List<VideoFormat> findByVideoAndCodec(Video video, String codec);
+
     /**
      * Counts the number of formats that are completed for a specific video.
      * Used to track encoding progress for displaying progress to the user.
@@ -72,5 +87,40 @@ public interface VideoFormatRepository extends JpaRepository<VideoFormat, Long>
      */
     long countByVideo(Video video);
 
+    /**
+     * Atomically moves a format to a new status once every one of its encoding chunks has reached the given status.
+     * Used by chunk encoding workers on different nodes so that exactly one of them schedules the stitch.
+     *
+     * @param formatId The ID of the video format.
+     * @param expected The status the format must currently have.
+     * @param target The status to move the format to.
+     * @param chunkStatus The status every chunk of the format must have.
+     * @return 1 if the format was updated, 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE VideoFormat f SET f.status = :target WHERE f.id = :formatId AND f.status = :expected AND " +
+            "NOT EXISTS (SELECT c FROM EncodingChunk c WHERE c.videoFormat.id = :formatId AND c.status <> :chunkStatus)")
+    int updateStatusIfAllChunksInStatus(@Param("formatId") Long formatId,
+                                        @Param("expected") VideoFormat.Status expected,
+                                        @Param("target") VideoFormat.Status target,
+                                        @Param("chunkStatus") EncodingChunk.Status chunkStatus);
+
+    /**
+     * Atomically moves a format from one status to another.
+     * Used to claim a rendition waiting for its audio, which both its own worker and the audio worker may try to finish.
+     *
+     * @param formatId The ID of the video format.
+     * @param expected The status the format must currently have.
+     * @param target The status to move the format to.
+     * @return 1 if the format was updated, 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE VideoFormat f SET f.status = :target WHERE f.id = :formatId AND f.status = :expected")
+    int updateStatus(@Param("formatId") Long formatId,
+                     @Param("expected") VideoFormat.Status expected,
+                     @Param("target") VideoFormat.Status target);
+
     Page<Video> findByVisibilityAndStatus(Video.Visibility visibility, Video.Status status, Pageable pageable);
 }
\ No newline at end of file
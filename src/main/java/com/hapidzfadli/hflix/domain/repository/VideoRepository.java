@@ -2,14 +2,18 @@ package com.hapidzfadli.hflix.domain.repository;
 
 import com.hapidzfadli.hflix.domain.entity.User;
 import com.hapidzfadli.hflix.domain.entity.Video;
+import com.hapidzfadli.hflix.domain.entity.VideoFormat;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface VideoRepository extends JpaRepository<Video, Long> {
@@ -86,4 +90,69 @@ public interface VideoRepository extends JpaRepository<Video, Long> {
     Page<Video> searchUserVideos(@Param("user") User user, @Param("keyword") String keyword, Pageable pageable);
 
     Page<Video> findByVisibilityAndStatus(Video.Visibility visibility, Video.Status status, Pageable pageable);
-}
\ No newline at end of file
+
+    /**
+     * Finds a video with the same content that was encoded with the same settings.
+     * Used to skip encoding when the same file is uploaded again.
+     *
+     * @param contentHash The content hash of the upload.
+     * @param encodingProfile The fingerprint of the encoding settings.
+     * @param status The status the video must have.
+     * @return An Optional containing a matching video if one exists.
+     */
+    Optional<Video> findFirstByContentHashAndEncodingProfileAndStatus(String contentHash, String encodingProfile,
+                                                                       Video.Status status);
+
+    /**
+     * Atomically moves a video to a new status and records its manifests once every one of its formats has
+     * reached the given status.
+     * Used by encoding workers on different nodes so that exactly one of them finalizes the video, after the
+     * manifests have been written.
+     *
+     * @param videoId The ID of the video.
+     * @param expected The status the video must currently have.
+     * @param target The status to move the video to.
+     * @param formatStatus The status every format of the video must have.
+     * @param manifestPath The prefix of the video's manifests.
+     * @return 1 if the video was updated, 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Video v SET v.status = :target, v.manifestPath = :manifestPath " +
+            "WHERE v.id = :videoId AND v.status = :expected AND " +
+            "NOT EXISTS (SELECT f FROM VideoFormat f WHERE f.video.id = :videoId AND f.status <> :formatStatus)")
+    int updateStatusIfAllFormatsInStatus(@Param("videoId") Long videoId,
+                                         @Param("expected") Video.Status expected,
+                                         @Param("target") Video.Status target,
+                                         @Param("formatStatus") VideoFormat.Status formatStatus,
+                                         @Param("manifestPath") String manifestPath);
+
+    /**
+     * Atomically moves a video from one status to another.
+     * Used by encoding workers to fail a video without overwriting a status another worker has already set.
+     *
+     * @param videoId The ID of the video.
+     * @param expected The status the video must currently have.
+     * @param target The status to move the video to.
+     * @return 1 if the video was updated, 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Video v SET v.status = :target WHERE v.id = :videoId AND v.status = :expected")
+    int updateStatus(@Param("videoId") Long videoId,
+                     @Param("expected") Video.Status expected,
+                     @Param("target") Video.Status target);
+
+    /**
+     * Sets the thumbnail of a video without touching its other columns.
+     * Used by thumbnail generation, which runs alongside encoding workers that move the video's status on.
+     *
+     * @param videoId The ID of the video.
+     * @param thumbnailPath The object key of the thumbnail.
+     * @return 1 if the video was updated, 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Video v SET v.thumbnailPath = :thumbnailPath WHERE v.id = :videoId")
+    int updateThumbnailPath(@Param("videoId") Long videoId, @Param("thumbnailPath") String thumbnailPath);
+}
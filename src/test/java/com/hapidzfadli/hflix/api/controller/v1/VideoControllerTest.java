@@ -0,0 +1,123 @@
+package com.hapidzfadli.hflix.api.controller.v1;
+
+import com.hapidzfadli.hflix.api.exception.StorageUnavailableException;
+import com.hapidzfadli.hflix.app.service.MinioService;
+import com.hapidzfadli.hflix.app.service.VideoService;
+import com.hapidzfadli.hflix.app.service.VideoUploadService;
+import com.hapidzfadli.hflix.app.service.impl.CustomUserDetailsService;
+import com.hapidzfadli.hflix.app.service.impl.JwtTokenProvider;
+import com.hapidzfadli.hflix.config.JwtAuthenticationEntryPoint;
+import com.hapidzfadli.hflix.config.JwtProperties;
+import com.hapidzfadli.hflix.config.MinioConfig;
+import com.hapidzfadli.hflix.config.SecurityConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(VideoController.class)
+@Import({SecurityConfig.class, JwtAuthenticationEntryPoint.class})
+class VideoControllerTest {
+
+    private static final String TOKEN = "Bearer test-token";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private VideoService videoService;
+
+    @MockitoBean
+    private VideoUploadService videoUploadService;
+
+    @MockitoBean
+    private MinioService minioService;
+
+    @MockitoBean
+    private MinioConfig minioConfig;
+
+    @MockitoBean
+    private JwtProperties jwtProperties;
+
+    @MockitoBean
+    private JwtTokenProvider jwtTokenProvider;
+
+    @MockitoBean
+    private CustomUserDetailsService customUserDetailsService;
+
+    @BeforeEach
+    void authenticate() {
+        when(jwtProperties.getHeaderName()).thenReturn(HttpHeaders.AUTHORIZATION);
+        when(jwtProperties.getTokenPrefix()).thenReturn("Bearer ");
+        when(jwtTokenProvider.validateToken(anyString())).thenReturn(true);
+        when(jwtTokenProvider.getAuthentication(anyString())).thenReturn(Optional.of(
+                new UsernamePasswordAuthenticationToken("viewer", null, List.of(new SimpleGrantedAuthority("ROLE_USER")))));
+    }
+
+    @Test
+    void streamsBodyOnAuthorizedAsyncDispatch() throws Exception {
+        StreamingResponseBody body = outputStream -> outputStream.write(new byte[]{1, 2, 3, 4});
+        when(videoService.streamVideo(eq(1L), any(), any())).thenReturn(partialContent(body));
+
+        MvcResult result = mockMvc.perform(get("/api/videos/stream/1").header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-3/4"));
+    }
+
+    @Test
+    void answersStorageUnavailableFromStreamingBodyWith503() throws Exception {
+        StreamingResponseBody body = outputStream -> {
+            throw new StorageUnavailableException("Storage is temporarily unavailable", 7);
+        };
+        when(videoService.streamVideo(eq(1L), any(), any())).thenReturn(partialContent(body));
+
+        MvcResult result = mockMvc.perform(get("/api/videos/stream/1").header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "7"))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void rejectsStreamWithoutToken() throws Exception {
+        mockMvc.perform(get("/api/videos/stream/1"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    private static ResponseEntity<StreamingResponseBody> partialContent(StreamingResponseBody body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_RANGE, "bytes 0-3/4");
+        headers.setContentLength(4);
+        return new ResponseEntity<>(body, headers, HttpStatus.PARTIAL_CONTENT);
+    }
+}
@@ -0,0 +1,89 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.domain.entity.UploadSession;
+import com.hapidzfadli.hflix.domain.repository.UploadChunkRepository;
+import com.hapidzfadli.hflix.domain.repository.UploadSessionRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class UploadSessionServiceImplTest {
+
+    private final UploadSessionServiceImpl service = new UploadSessionServiceImpl(
+            mock(UploadSessionRepository.class), mock(UploadChunkRepository.class));
+
+    @Test
+    void reportsNothingMissingBeforeChunkCountIsKnown() {
+        UploadSession session = session(null);
+
+        assertEquals(List.of(), service.getMissingRanges(session));
+        assertFalse(service.isComplete(session));
+    }
+
+    @Test
+    void reportsEveryChunkMissingWhenNoneReceived() {
+        UploadSession session = session(5);
+
+        assertEquals(List.of("0-4"), service.getMissingRanges(session));
+        assertFalse(service.isComplete(session));
+    }
+
+    @Test
+    void reportsSingleGap() {
+        UploadSession session = session(10, 0, 1, 2, 6, 7, 8, 9);
+
+        assertEquals(List.of("3-5"), service.getMissingRanges(session));
+        assertFalse(service.isComplete(session));
+    }
+
+    @Test
+    void reportsSingleMissingChunkWithoutRange() {
+        UploadSession session = session(4, 0, 1, 3);
+
+        assertEquals(List.of("2"), service.getMissingRanges(session));
+        assertFalse(service.isComplete(session));
+    }
+
+    @Test
+    void reportsGapsAtBothEnds() {
+        UploadSession session = session(10, 2, 3, 4, 5, 6, 7);
+
+        assertEquals(List.of("0-1", "8-9"), service.getMissingRanges(session));
+        assertFalse(service.isComplete(session));
+    }
+
+    @Test
+    void reportsLastChunkMissing() {
+        UploadSession session = session(9, 0, 1, 2, 3, 4, 5, 6, 7);
+
+        assertEquals(List.of("8"), service.getMissingRanges(session));
+        assertFalse(service.isComplete(session));
+    }
+
+    @Test
+    void reportsCompleteUpload() {
+        UploadSession session = session(4, 0, 1, 2, 3);
+
+        assertEquals(List.of(), service.getMissingRanges(session));
+        assertTrue(service.isComplete(session));
+    }
+
+    private static UploadSession session(Integer totalChunks, int... receivedChunks) {
+        BitSet received = new BitSet();
+        for (int chunkNumber : receivedChunks) {
+            received.set(chunkNumber);
+        }
+
+        UploadSession session = new UploadSession();
+        session.setTotalChunks(totalChunks);
+        session.setReceivedChunks(received.toByteArray());
+        session.setReceivedCount(received.cardinality());
+        return session;
+    }
+}
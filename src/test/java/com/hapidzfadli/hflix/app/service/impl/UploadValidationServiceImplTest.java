@@ -0,0 +1,204 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadValidationServiceImplTest {
+
+    private static final String ALLOWED_TYPES = "video/mp4,video/quicktime,video/x-m4v,video/3gpp,video/x-matroska,"
+            + "video/webm,video/x-msvideo,video/mp2t,video/mpeg,video/x-flv";
+
+    private final UploadValidationServiceImpl service = new UploadValidationServiceImpl(ALLOWED_TYPES);
+
+    @Test
+    void acceptsFastStartMp4() {
+        byte[] header = concat(ftyp(), box("moov", 32), box("mdat", 64));
+
+        assertEquals("video/mp4", service.validateHeader("clip.mp4", header));
+        assertTrue(service.isFastStart(header));
+    }
+
+    @Test
+    void acceptsMp4WithMdatBeforeMoov() {
+        byte[] header = concat(ftyp(), box("mdat", 64), box("moov", 32));
+
+        assertEquals("video/mp4", service.validateHeader("clip.mp4", header));
+        assertFalse(service.isFastStart(header));
+    }
+
+    @Test
+    void skipsBoxesWithLargeSizes() {
+        byte[] header = concat(ftyp(), largeBox("free", 24), box("moov", 32));
+
+        assertEquals("video/mp4", service.validateHeader("clip.mp4", header));
+        assertTrue(service.isFastStart(header));
+    }
+
+    @Test
+    void acceptsLargeMdatRunningPastTheHeader() {
+        byte[] mdat = ByteBuffer.allocate(32).putInt(1).put(ascii("mdat")).putLong(1L << 33).array();
+        byte[] header = concat(ftyp(), mdat);
+
+        assertEquals("video/mp4", service.validateHeader("clip.mp4", header));
+        assertFalse(service.isFastStart(header));
+    }
+
+    @Test
+    void rejectsLargeSizeSmallerThanItsHeader() {
+        byte[] free = ByteBuffer.allocate(16).putInt(1).put(ascii("free")).putLong(8).array();
+        byte[] header = concat(ftyp(), free, box("moov", 32));
+
+        assertMalformed("clip.mp4", header);
+    }
+
+    @Test
+    void rejectsFtypTooShortForItsBrand() {
+        byte[] ftyp = ByteBuffer.allocate(12).putInt(12).put(ascii("ftyp")).put(ascii("mp42")).array();
+
+        assertMalformed("clip.mp4", concat(ftyp, box("moov", 32)));
+    }
+
+    @Test
+    void rejectsJunkAfterMp4Signature() {
+        byte[] junk = new byte[64];
+        Arrays.fill(junk, (byte) 0x01);
+
+        assertMalformed("clip.mp4", concat(ftyp(), junk));
+    }
+
+    @Test
+    void acceptsMatroskaHeader() {
+        byte[] header = concat(
+                bytes(0x1A, 0x45, 0xDF, 0xA3, 0x93),
+                bytes(0x42, 0x82, 0x88), ascii("matroska"),
+                bytes(0x42, 0x87, 0x81, 0x04),
+                bytes(0x42, 0x85, 0x81, 0x02),
+                bytes(0x18, 0x53, 0x80, 0x67, 0x01));
+
+        assertEquals("video/x-matroska", service.validateHeader("clip.mkv", header));
+    }
+
+    @Test
+    void acceptsWebmHeader() {
+        byte[] header = concat(webmHeader(), bytes(0x18, 0x53, 0x80, 0x67, 0x01));
+
+        assertEquals("video/webm", service.validateHeader("clip.webm", header));
+    }
+
+    @Test
+    void rejectsTruncatedEbmlHeader() {
+        byte[] header = Arrays.copyOf(webmHeader(), 12);
+
+        assertThrows(IllegalArgumentException.class, () -> service.validateHeader("clip.webm", header));
+    }
+
+    @Test
+    void rejectsEbmlHeaderWithoutDocType() {
+        byte[] header = concat(
+                bytes(0x1A, 0x45, 0xDF, 0xA3, 0x88),
+                bytes(0x42, 0x86, 0x81, 0x01),
+                bytes(0x42, 0xF7, 0x81, 0x01),
+                bytes(0x18, 0x53, 0x80, 0x67, 0x01));
+
+        assertThrows(IllegalArgumentException.class, () -> service.validateHeader("clip.mkv", header));
+    }
+
+    @Test
+    void acceptsTransportStreamSyncBytes() {
+        byte[] header = transportStream(4);
+
+        assertEquals("video/mp2t", service.validateHeader("clip.ts", header));
+    }
+
+    @Test
+    void rejectsTransportStreamWithLostSync() {
+        byte[] header = transportStream(4);
+        header[188 * 3] = 0x00;
+
+        assertMalformed("clip.ts", header);
+    }
+
+    @Test
+    void rejectsUnsupportedType() {
+        byte[] header = ascii("just some text, not a video at all\n");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> service.validateHeader("notes.txt", header));
+        assertTrue(e.getMessage().startsWith("Unsupported file type"), e.getMessage());
+    }
+
+    private void assertMalformed(String filename, byte[] header) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> service.validateHeader(filename, header));
+        assertTrue(e.getMessage().startsWith("Malformed"), e.getMessage());
+    }
+
+    private static byte[] ftyp() {
+        return ByteBuffer.allocate(24)
+                .putInt(24).put(ascii("ftyp"))
+                .put(ascii("mp42")).putInt(0)
+                .put(ascii("isom")).put(ascii("mp42"))
+                .array();
+    }
+
+    private static byte[] box(String type, int size) {
+        return ByteBuffer.allocate(size).putInt(size).put(ascii(type)).array();
+    }
+
+    private static byte[] largeBox(String type, long size) {
+        return ByteBuffer.allocate((int) size).putInt(1).put(ascii(type)).putLong(size).array();
+    }
+
+    private static byte[] webmHeader() {
+        return concat(
+                bytes(0x1A, 0x45, 0xDF, 0xA3, 0x9F),
+                bytes(0x42, 0x86, 0x81, 0x01),
+                bytes(0x42, 0xF7, 0x81, 0x01),
+                bytes(0x42, 0xF2, 0x81, 0x04),
+                bytes(0x42, 0xF3, 0x81, 0x08),
+                bytes(0x42, 0x82, 0x84), ascii("webm"),
+                bytes(0x42, 0x87, 0x81, 0x02),
+                bytes(0x42, 0x85, 0x81, 0x02));
+    }
+
+    private static byte[] transportStream(int packets) {
+        byte[] data = new byte[188 * packets];
+        Arrays.fill(data, (byte) 0xFF);
+        for (int i = 0; i < packets; i++) {
+            data[i * 188] = 0x47;
+            data[i * 188 + 1] = 0x1F;
+            data[i * 188 + 2] = (byte) 0xFF;
+            data[i * 188 + 3] = 0x10;
+        }
+        return data;
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] data = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            data[i] = (byte) values[i];
+        }
+        return data;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,198 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.MinioService;
+import com.hapidzfadli.hflix.app.service.UploadSessionService;
+import com.hapidzfadli.hflix.app.service.UploadValidationService;
+import com.hapidzfadli.hflix.app.service.UserService;
+import com.hapidzfadli.hflix.app.service.VideoEncodingService;
+import com.hapidzfadli.hflix.app.service.VideoProbeService;
+import com.hapidzfadli.hflix.app.streaming.TransferBufferPool;
+import com.hapidzfadli.hflix.config.MinioConfig;
+import com.hapidzfadli.hflix.domain.entity.UploadSession;
+import com.hapidzfadli.hflix.domain.entity.User;
+import com.hapidzfadli.hflix.domain.entity.Video;
+import com.hapidzfadli.hflix.domain.repository.VideoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class VideoUploadServiceImplTest {
+
+    private static final long VIDEO_ID = 1L;
+    private static final long SESSION_ID = 11L;
+    private static final String USERNAME = "alice";
+    private static final long PART_SIZE = 5L * 1024 * 1024;
+
+    private final VideoRepository videoRepository = mock(VideoRepository.class);
+    private final MinioService minioService = mock(MinioService.class);
+    private final MinioConfig minioConfig = mock(MinioConfig.class);
+    private final VideoEncodingService videoEncodingService = mock(VideoEncodingService.class);
+    private final VideoProbeService videoProbeService = mock(VideoProbeService.class);
+    private final UploadSessionService uploadSessionService = mock(UploadSessionService.class);
+
+    @SuppressWarnings("unchecked")
+    private final VideoUploadServiceImpl service = new VideoUploadServiceImpl(videoRepository, mock(UserService.class),
+            minioService, minioConfig, videoEncodingService, videoProbeService, mock(KafkaTemplate.class),
+            uploadSessionService, mock(TransferBufferPool.class), mock(UploadValidationService.class));
+
+    private Video video;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "uploadMode", "MULTIPART");
+        ReflectionTestUtils.setField(service, "finalizationTimeoutMinutes", 30L);
+        when(minioConfig.getBucketName()).thenReturn("videos");
+
+        User user = new User();
+        user.setId(7L);
+        user.setUsername(USERNAME);
+
+        video = new Video();
+        video.setId(VIDEO_ID);
+        video.setUser(user);
+        video.setOriginalFilename("clip.mp4");
+        video.setS3Path("original/7/0b0e/clip.mp4");
+        video.setStatus(Video.Status.UPLOADING);
+        when(videoRepository.findById(VIDEO_ID)).thenReturn(Optional.of(video));
+    }
+
+    @Test
+    void rejectsUndersizedPartBeforeTheLastChunk() throws Exception {
+        UploadSession session = multipartSession(10);
+        when(uploadSessionService.isReceived(session, 0)).thenReturn(true);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.uploadChunk(USERNAME, VIDEO_ID, 2, 10, body(1024), 1024, null));
+
+        verify(minioService, never()).uploadPart(any(), any(), any(), anyInt(), any(), anyLong());
+        verify(uploadSessionService, never()).recordChunk(any(), anyInt(), anyInt(), any(), any(), anyLong());
+    }
+
+    @Test
+    void rejectsDuplicateChunkBeforeReadingItsBody() {
+        UploadSession session = multipartSession(10);
+        when(uploadSessionService.isReceived(session, 0)).thenReturn(true);
+        when(uploadSessionService.isReceived(session, 3)).thenReturn(true);
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> service.uploadChunk(USERNAME, VIDEO_ID, 3, 10, body(PART_SIZE), PART_SIZE, null));
+
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+        verifyNoInteractions(minioService);
+        verify(uploadSessionService, never()).recordChunk(any(), anyInt(), anyInt(), any(), any(), anyLong());
+    }
+
+    @Test
+    void rejectsChunkCountDifferentFromTheSession() {
+        multipartSession(10);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.uploadChunk(USERNAME, VIDEO_ID, 3, 8, body(PART_SIZE), PART_SIZE, null));
+
+        verifyNoInteractions(minioService);
+        verify(uploadSessionService, never()).recordChunk(any(), anyInt(), anyInt(), any(), any(), anyLong());
+    }
+
+    @Test
+    void rejectsPresignedPartOutsideTheAnnouncedRange() throws Exception {
+        video.setFileSize(2 * PART_SIZE);
+        presignedSession(2);
+        when(minioService.listParts("videos", video.getS3Path(), "upload-1")).thenReturn(List.of(
+                new MinioService.UploadedPart(1, "etag-1", PART_SIZE),
+                new MinioService.UploadedPart(3, "etag-3", PART_SIZE)));
+
+        assertThrows(IllegalArgumentException.class, () -> service.completeUpload(USERNAME, VIDEO_ID));
+
+        verify(uploadSessionService, never()).recordChunks(any(), anyList());
+        verify(uploadSessionService, never()).claimFinalization(any(), any(), any());
+    }
+
+    @Test
+    void rejectsPresignedPartsNotAddingUpToTheFileSize() throws Exception {
+        video.setFileSize(PART_SIZE + 200);
+        UploadSession session = presignedSession(2);
+        when(minioService.listParts("videos", video.getS3Path(), "upload-1")).thenReturn(List.of(
+                new MinioService.UploadedPart(1, "etag-1", PART_SIZE),
+                new MinioService.UploadedPart(2, "etag-2", 100)));
+        when(uploadSessionService.recordChunks(eq(VIDEO_ID), anyList())).thenReturn(session);
+        when(uploadSessionService.isComplete(session)).thenReturn(true);
+
+        assertThrows(IllegalArgumentException.class, () -> service.completeUpload(USERNAME, VIDEO_ID));
+
+        verify(uploadSessionService, never()).claimFinalization(any(), any(), any());
+    }
+
+    @Test
+    void supersededFinalizationStopsAtItsNextStep() throws Exception {
+        UploadSession session = multipartSession(2);
+        when(uploadSessionService.getChunks(session)).thenReturn(List.of());
+        when(uploadSessionService.updateFinalization(SESSION_ID, "job-1", UploadSession.Status.FINALIZING,
+                UploadSession.FinalizationStep.HASHING, null)).thenReturn(true);
+        // A retry has claimed the session by the time this finalizer moves on to assembling
+
+        ReflectionTestUtils.invokeMethod(service, "finalizeUpload", VIDEO_ID, SESSION_ID, "job-1");
+
+        verify(minioService, never()).completeMultipartUpload(any(), any(), any(), any());
+        verifyNoInteractions(videoProbeService);
+        verify(videoEncodingService, never()).startEncodingJob(any());
+        verify(videoRepository, never()).save(any());
+        verify(uploadSessionService, never()).updateFinalization(eq(SESSION_ID), eq("job-1"),
+                eq(UploadSession.Status.FAILED), any(), any());
+        verify(uploadSessionService, never()).completeFinalization(any(), any());
+    }
+
+    @Test
+    void marksPrefixStageFailedWhenThePrefixCannotBeProbed() throws Exception {
+        UploadSession session = multipartSession(40);
+        session.setPrefixChunks(2);
+        when(minioService.getPresignedUrl(eq("videos"), any(), anyInt())).thenReturn("http://minio/part");
+        when(videoProbeService.probeSource(video, "concat:http://minio/part|http://minio/part")).thenReturn(false);
+
+        ReflectionTestUtils.invokeMethod(service, "processPrefix", VIDEO_ID, SESSION_ID);
+
+        verify(uploadSessionService).completePrefixStage(SESSION_ID, false);
+        verify(videoEncodingService, never()).startPrefixEncoding(any(), any());
+        verify(videoRepository, never()).save(any());
+    }
+
+    private UploadSession presignedSession(int totalChunks) {
+        UploadSession session = multipartSession(totalChunks);
+        session.setPresigned(true);
+        return session;
+    }
+
+    private UploadSession multipartSession(Integer totalChunks) {
+        UploadSession session = new UploadSession();
+        session.setId(SESSION_ID);
+        session.setVideo(video);
+        session.setMultipartUploadId("upload-1");
+        session.setTotalChunks(totalChunks);
+        when(uploadSessionService.getSession(VIDEO_ID)).thenReturn(Optional.of(session));
+        return session;
+    }
+
+    private static InputStream body(long size) {
+        return new ByteArrayInputStream(new byte[(int) size]);
+    }
+}
@@ -0,0 +1,172 @@
+package com.hapidzfadli.hflix.app.streaming;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DiskBlockStoreTest {
+
+    private static final int BLOCK_SIZE = 4;
+    private static final String OBJECT = "encoded/1/2/720p.mp4";
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedBlocksBeyondBudget() throws Exception {
+        DiskBlockStore store = store(2 * BLOCK_SIZE);
+
+        read(store, 0);
+        read(store, 1);
+        read(store, 0);
+        read(store, 2);
+
+        assertTrue(store.contains(OBJECT, 0));
+        assertFalse(store.contains(OBJECT, 1), "least recently used block was kept");
+        assertTrue(store.contains(OBJECT, 2));
+        assertEquals(2 * BLOCK_SIZE, store.getResidentBytes());
+        assertEquals(2, blockFiles());
+    }
+
+    @Test
+    void keepsServingOpenReaderOfEvictedBlock() throws Exception {
+        DiskBlockStore store = store(BLOCK_SIZE);
+
+        try (FileChannel reader = open(store, 0, loaderOf(block(0)))) {
+            read(store, 1);
+            assertFalse(store.contains(OBJECT, 0));
+
+            assertArrayEquals(block(0), readFully(reader));
+        }
+        assertEquals(BLOCK_SIZE, store.getResidentBytes());
+    }
+
+    @Test
+    void sharesOneOriginRequestBetweenConcurrentMisses() throws Exception {
+        DiskBlockStore store = store(4 * BLOCK_SIZE);
+        AtomicInteger originRequests = new AtomicInteger();
+        CountDownLatch originReleased = new CountDownLatch(1);
+        DiskBlockStore.BlockLoader loader = (start, end) -> {
+            originRequests.incrementAndGet();
+            assertTrue(originReleased.await(5, TimeUnit.SECONDS));
+            return new ByteArrayInputStream(block(0));
+        };
+
+        Future<byte[]> first = executor.submit(() -> readAndClose(store, loader));
+        Future<byte[]> second = executor.submit(() -> readAndClose(store, loader));
+
+        // Both requests have missed once the second one waits on the first one's load
+        long deadline = System.currentTimeMillis() + 5000;
+        while (misses() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        originReleased.countDown();
+
+        assertArrayEquals(block(0), first.get(5, TimeUnit.SECONDS));
+        assertArrayEquals(block(0), second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, originRequests.get());
+        assertEquals(BLOCK_SIZE, store.getResidentBytes());
+    }
+
+    @Test
+    void rejectsTruncatedOriginStream() throws Exception {
+        DiskBlockStore store = store(4 * BLOCK_SIZE);
+        byte[] truncated = {1, 2};
+
+        assertThrows(IOException.class, () -> open(store, 0, loaderOf(truncated)));
+
+        assertFalse(store.contains(OBJECT, 0));
+        assertEquals(0, store.getResidentBytes());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count(), "partial download was left behind");
+        }
+    }
+
+    private DiskBlockStore store(long maxSize) throws IOException {
+        DiskBlockStore store = new DiskBlockStore(meterRegistry);
+        ReflectionTestUtils.setField(store, "directory", directory.toString());
+        ReflectionTestUtils.setField(store, "maxSize", maxSize);
+        store.init();
+        return store;
+    }
+
+    private void read(DiskBlockStore store, long blockIndex) throws IOException {
+        try (FileChannel channel = open(store, blockIndex, loaderOf(block(blockIndex)))) {
+            assertArrayEquals(block(blockIndex), readFully(channel));
+        }
+    }
+
+    private byte[] readAndClose(DiskBlockStore store, DiskBlockStore.BlockLoader loader) throws IOException {
+        try (FileChannel channel = open(store, 0, loader)) {
+            return readFully(channel);
+        }
+    }
+
+    private FileChannel open(DiskBlockStore store, long blockIndex, DiskBlockStore.BlockLoader loader)
+            throws IOException {
+        long start = blockIndex * BLOCK_SIZE;
+        return store.openBlock(OBJECT, blockIndex, start, start + BLOCK_SIZE, loader);
+    }
+
+    private static DiskBlockStore.BlockLoader loaderOf(byte[] bytes) {
+        return (start, end) -> new ByteArrayInputStream(bytes);
+    }
+
+    private static byte[] block(long blockIndex) {
+        byte[] bytes = new byte[BLOCK_SIZE];
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            bytes[i] = (byte) (blockIndex * BLOCK_SIZE + i);
+        }
+        return bytes;
+    }
+
+    private static byte[] readFully(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.array();
+    }
+
+    private long blockFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".blk")).count();
+        }
+    }
+
+    private double misses() {
+        return meterRegistry.get("hflix.stream.cache.disk.misses").functionCounter().count();
+    }
+}
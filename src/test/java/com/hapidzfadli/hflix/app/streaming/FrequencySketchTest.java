@@ -0,0 +1,49 @@
+package com.hapidzfadli.hflix.app.streaming;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrequencySketchTest {
+
+    private static final int HOT = 0x5bd1e995;
+
+    private final FrequencySketch sketch = new FrequencySketch(8);
+
+    @Test
+    void countsIncrementsOfAKey() {
+        for (int i = 0; i < 5; i++) {
+            sketch.increment(HOT);
+        }
+
+        assertEquals(5, sketch.frequency(HOT));
+        assertEquals(0, sketch.frequency(HOT + 1));
+    }
+
+    @Test
+    void saturatesAtMaximumCount() {
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(HOT);
+        }
+
+        assertEquals(15, sketch.frequency(HOT));
+    }
+
+    @Test
+    void halvesCountsOnceSampleIsFull() {
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(HOT);
+        }
+
+        // Saturated counters only come down when the sketch ages
+        boolean aged = false;
+        for (int key = 1; key <= 10_000 && !aged; key++) {
+            sketch.increment(key * 0x9e3779b9);
+            aged = sketch.frequency(HOT) < 15;
+        }
+
+        assertTrue(aged, "sketch never aged");
+        assertEquals(7, sketch.frequency(HOT));
+    }
+}
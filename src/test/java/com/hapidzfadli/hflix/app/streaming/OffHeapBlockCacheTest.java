@@ -0,0 +1,142 @@
+package com.hapidzfadli.hflix.app.streaming;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class OffHeapBlockCacheTest {
+
+    private static final int BLOCK_SIZE = 4;
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    /**
+     * Two slots in a single stripe, so the admission policy always weighs the candidate
+     * against the one least recently used block.
+     */
+    private final OffHeapBlockCache cache = new OffHeapBlockCache(true, 2 * BLOCK_SIZE, 1, BLOCK_SIZE, meterRegistry);
+
+    @Test
+    void servesAdmittedBlocksWhileSlotsAreFree() throws Exception {
+        admit("a");
+        admit("b");
+
+        assertCached("a");
+        assertCached("b");
+        assertEquals(2 * BLOCK_SIZE, cache.getResidentBytes());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedBlockForMorePopularCandidate() throws Exception {
+        admit("a");
+        admit("b");
+        touch("b", 2);
+        touch("c", 3);
+
+        admit("c");
+
+        assertNull(cache.get("a"));
+        assertCached("b");
+        assertCached("c");
+        assertEquals(2 * BLOCK_SIZE, cache.getResidentBytes());
+    }
+
+    @Test
+    void rejectsColdCandidateWhenFull() throws Exception {
+        admit("a");
+        admit("b");
+        touch("a", 3);
+        touch("b", 3);
+
+        admit("cold");
+
+        assertEquals(1, meterRegistry.get("hflix.stream.cache.memory.rejections").functionCounter().count());
+        assertCached("a");
+        assertCached("b");
+        assertNull(cache.get("cold"));
+    }
+
+    @Test
+    void returnsSlotOfEvictedBlockOnlyAfterLastReaderReleasesIt() throws Exception {
+        admit("a");
+        admit("b");
+        OffHeapBlockCache.Block reader = cache.get("a");
+        assertNotNull(reader);
+        touch("b", 3);
+        touch("c", 3);
+
+        // "a" is evicted, but its slot stays pinned by the reader, so "c" cannot take it yet
+        admit("c");
+        assertNull(cache.get("a"));
+        assertNull(cache.get("c"));
+        assertEquals(2 * BLOCK_SIZE, cache.getResidentBytes());
+        assertArrayEquals(bytes("a"), read(reader));
+
+        reader.release();
+        assertEquals(BLOCK_SIZE, cache.getResidentBytes());
+
+        admit("c");
+        assertCached("c");
+        assertEquals(2 * BLOCK_SIZE, cache.getResidentBytes());
+    }
+
+    private void admit(String key) throws IOException {
+        Path file = directory.resolve(key + ".blk");
+        Files.write(file, bytes(key));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            cache.admit(key, channel, BLOCK_SIZE);
+        }
+    }
+
+    /**
+     * Reads a block the given number of times, which is what makes it popular to the sketch.
+     */
+    private void touch(String key, int times) {
+        for (int i = 0; i < times; i++) {
+            OffHeapBlockCache.Block block = cache.get(key);
+            if (block != null) {
+                block.release();
+            }
+        }
+    }
+
+    private void assertCached(String key) {
+        OffHeapBlockCache.Block block = cache.get(key);
+        assertNotNull(block, key + " is not cached");
+        try {
+            assertArrayEquals(bytes(key), read(block));
+        } finally {
+            block.release();
+        }
+    }
+
+    private static byte[] read(OffHeapBlockCache.Block block) {
+        ByteBuffer view = block.view(0, block.length());
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] bytes(String key) {
+        byte[] bytes = new byte[BLOCK_SIZE];
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            bytes[i] = (byte) (key.hashCode() + i);
+        }
+        return bytes;
+    }
+}
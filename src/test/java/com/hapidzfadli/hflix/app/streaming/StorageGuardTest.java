@@ -0,0 +1,204 @@
+package com.hapidzfadli.hflix.app.streaming;
+
+import com.hapidzfadli.hflix.api.exception.StorageUnavailableException;
+import com.hapidzfadli.hflix.app.streaming.StorageGuard.Operation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StorageGuardTest {
+
+    private static final double CLOSED = 0;
+    private static final double HALF_OPEN = 1;
+    private static final double OPEN = 2;
+
+    private static final long COOL_DOWN_MILLIS = 1100;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void opensWhenFailureRateReachesThreshold() throws Exception {
+        StorageGuard guard = guard(10_000);
+
+        succeed(guard);
+        succeed(guard);
+        fail(guard);
+        assertEquals(CLOSED, state(), "opened before the minimum number of calls");
+
+        fail(guard);
+        assertEquals(OPEN, state());
+
+        StorageUnavailableException e = assertThrows(StorageUnavailableException.class,
+                () -> guard.execute(Operation.STAT, () -> "ok"));
+        assertTrue(e.getRetryAfterSeconds() > 0);
+        assertThrows(StorageUnavailableException.class, () -> guard.checkAvailable(Operation.GET_RANGE));
+        assertEquals(2, rejections("circuit"));
+    }
+
+    @Test
+    void opensWhenSlowCallRateReachesThreshold() throws Exception {
+        StorageGuard guard = guard(20);
+
+        succeed(guard);
+        succeed(guard);
+        succeedSlowly(guard);
+        assertEquals(CLOSED, state());
+
+        succeedSlowly(guard);
+        assertEquals(OPEN, state());
+    }
+
+    @Test
+    void staysClosedBelowThresholds() throws Exception {
+        StorageGuard guard = guard(10_000);
+
+        for (int i = 0; i < 10; i++) {
+            succeed(guard);
+        }
+        fail(guard);
+        fail(guard);
+
+        assertEquals(CLOSED, state());
+    }
+
+    @Test
+    void becomesHalfOpenAfterCoolDown() throws Exception {
+        StorageGuard guard = openGuard();
+
+        Thread.sleep(COOL_DOWN_MILLIS);
+        assertDoesNotThrow(() -> guard.checkAvailable(Operation.STAT));
+
+        succeed(guard);
+        assertEquals(HALF_OPEN, state());
+    }
+
+    @Test
+    void closesAfterSuccessfulTrialCalls() throws Exception {
+        StorageGuard guard = openGuard();
+        Thread.sleep(COOL_DOWN_MILLIS);
+
+        succeed(guard);
+        succeed(guard);
+
+        assertEquals(CLOSED, state());
+        fail(guard);
+        assertEquals(CLOSED, state(), "window was not reset on closing");
+    }
+
+    @Test
+    void reopensOnFailedTrialCall() throws Exception {
+        StorageGuard guard = openGuard();
+        Thread.sleep(COOL_DOWN_MILLIS);
+
+        succeed(guard);
+        fail(guard);
+
+        assertEquals(OPEN, state());
+        assertThrows(StorageUnavailableException.class, () -> guard.execute(Operation.STAT, () -> "ok"));
+    }
+
+    @Test
+    void refusesCallsBeyondTrialPermits() throws Exception {
+        StorageGuard guard = openGuard();
+        Thread.sleep(COOL_DOWN_MILLIS);
+
+        InputStream first = guard.openStream(Operation.GET_RANGE, () -> new ByteArrayInputStream(new byte[8]));
+        InputStream second = guard.openStream(Operation.GET_RANGE, () -> new ByteArrayInputStream(new byte[8]));
+
+        assertThrows(StorageUnavailableException.class, () -> guard.checkAvailable(Operation.STAT));
+        assertThrows(StorageUnavailableException.class, () -> guard.execute(Operation.STAT, () -> "ok"));
+
+        first.close();
+        second.close();
+        assertEquals(CLOSED, state());
+    }
+
+    @Test
+    void releasesStreamPermitOnlyOnce() throws Exception {
+        StorageGuard guard = guard(10_000);
+
+        InputStream stream = guard.openStream(Operation.GET_RANGE, () -> new ByteArrayInputStream(new byte[8]));
+        assertEquals(1, availablePermits(Operation.GET_RANGE));
+
+        stream.close();
+        stream.close();
+        assertEquals(2, availablePermits(Operation.GET_RANGE));
+
+        InputStream first = guard.openStream(Operation.GET_RANGE, () -> new ByteArrayInputStream(new byte[8]));
+        InputStream second = guard.openStream(Operation.GET_RANGE, () -> new ByteArrayInputStream(new byte[8]));
+        assertThrows(StorageUnavailableException.class,
+                () -> guard.openStream(Operation.GET_RANGE, () -> new ByteArrayInputStream(new byte[8])));
+        assertEquals(1, rejections("bulkhead"));
+
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void releasesPermitWhenOpeningFails() {
+        StorageGuard guard = guard(10_000);
+
+        assertThrows(IOException.class, () -> guard.openStream(Operation.GET_RANGE, () -> {
+            throw new IOException("connection reset");
+        }));
+
+        assertEquals(2, availablePermits(Operation.GET_RANGE));
+    }
+
+    /**
+     * Two permits per operation, no wait for a permit, a window of 10 that opens at 50%
+     * failed or slow calls once 4 calls are in, a 1 second cool-down and 2 trial calls.
+     */
+    private StorageGuard guard(long slowCallMillis) {
+        return new StorageGuard(meterRegistry, 2, 2, 0, 10, 4, 50, slowCallMillis, 50, 1, 2);
+    }
+
+    private StorageGuard openGuard() {
+        StorageGuard guard = guard(10_000);
+        for (int i = 0; i < 4; i++) {
+            fail(guard);
+        }
+        assertEquals(OPEN, state());
+        return guard;
+    }
+
+    private void succeed(StorageGuard guard) throws Exception {
+        assertEquals("ok", guard.execute(Operation.STAT, () -> "ok"));
+    }
+
+    private void succeedSlowly(StorageGuard guard) throws Exception {
+        guard.execute(Operation.STAT, () -> {
+            Thread.sleep(40);
+            return "ok";
+        });
+    }
+
+    private void fail(StorageGuard guard) {
+        assertThrows(IOException.class, () -> guard.execute(Operation.STAT, () -> {
+            throw new IOException("connection reset");
+        }));
+    }
+
+    private double state() {
+        return meterRegistry.get("hflix.storage.circuit.state").gauge().value();
+    }
+
+    private double availablePermits(Operation operation) {
+        return meterRegistry.get("hflix.storage.bulkhead.available")
+                .tag("operation", operation.name().toLowerCase(Locale.ROOT))
+                .gauge().value();
+    }
+
+    private double rejections(String reason) {
+        return meterRegistry.get("hflix.storage.rejections").tag("reason", reason).counter().count();
+    }
+}